@@ -0,0 +1,104 @@
+package com.robotium.solo;
+
+import java.util.LinkedList;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+/**
+ * 截图使用的Bitmap缓存池,避免每一帧都重新分配整屏大小的Bitmap
+ * A bounded pool of reusable bitmaps used by the screenshot methods.
+ * Bitmaps are obtained on the UI thread and released by the saving thread once encoded.
+ */
+
+class BitmapPool {
+	// 缓存池中最多保留的Bitmap数量
+	private final int maxSize;
+	// 空闲的Bitmap
+	private final LinkedList<Bitmap> freeBitmaps = new LinkedList<Bitmap>();
+
+	/**
+	 * 构造函数
+	 * Constructs this object.
+	 *
+	 * @param maxSize the maximum number of idle bitmaps kept in the pool
+	 */
+
+	public BitmapPool(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * 获取一个指定尺寸的Bitmap,缓存池中有可复用的则直接返回并清空内容,否则新建一个
+	 * Returns a cleared bitmap with the given dimensions. A pooled bitmap is reused if one matches.
+	 *
+	 * @param width the width of the bitmap
+	 * @param height the height of the bitmap
+	 * @param config the {@code Bitmap.Config} of the bitmap
+	 * @return a bitmap with the given dimensions
+	 */
+
+	public Bitmap obtain(int width, int height, Bitmap.Config config) {
+		Bitmap bitmap = null;
+
+		synchronized (freeBitmaps) {
+			for (int i = 0; i < freeBitmaps.size(); i++) {
+				Bitmap candidate = freeBitmaps.get(i);
+				if (candidate.getWidth() == width && candidate.getHeight() == height && candidate.getConfig() == config) {
+					bitmap = freeBitmaps.remove(i);
+					break;
+				}
+			}
+		}
+
+		if (bitmap == null) {
+			return Bitmap.createBitmap(width, height, config);
+		}
+		bitmap.eraseColor(Color.TRANSPARENT);
+		return bitmap;
+	}
+
+	/**
+	 * 归还Bitmap,缓存池已满时释放最旧的Bitmap
+	 * Returns a bitmap to the pool. The oldest idle bitmap is recycled if the pool is full.
+	 *
+	 * @param bitmap the bitmap to release
+	 */
+
+	public void release(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled()) {
+			return;
+		}
+
+		if (!bitmap.isMutable() || maxSize <= 0) {
+			bitmap.recycle();
+			return;
+		}
+
+		Bitmap evicted = null;
+
+		synchronized (freeBitmaps) {
+			freeBitmaps.addFirst(bitmap);
+			if (freeBitmaps.size() > maxSize) {
+				evicted = freeBitmaps.removeLast();
+			}
+		}
+
+		if (evicted != null) {
+			evicted.recycle();
+		}
+	}
+
+	/**
+	 * 清空缓存池并释放所有Bitmap
+	 * Recycles all idle bitmaps.
+	 */
+
+	public void clear() {
+		synchronized (freeBitmaps) {
+			for (Bitmap bitmap : freeBitmaps) {
+				bitmap.recycle();
+			}
+			freeBitmaps.clear();
+		}
+	}
+}
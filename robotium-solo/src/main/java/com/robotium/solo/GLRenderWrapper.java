@@ -1,6 +1,7 @@
 package com.robotium.solo;
 
-import java.nio.IntBuffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.concurrent.CountDownLatch;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -27,12 +28,19 @@ class GLRenderWrapper implements Renderer {
 	private int height;
 	// 图形操作接口
 	private final GLSurfaceView view;
-	// 原子计数器，同步线程操作
-	private CountDownLatch latch;
+	// 原子计数器，同步线程操作,在测试线程中设置,在GL线程中使用
+	private volatile CountDownLatch latch;
 	// 设置是否要截屏
-	private boolean takeScreenshot = true;
+	private volatile boolean takeScreenshot = true;
 	// 获取GL版本
 	private int glVersion;
+	// 像素读取缓存,多次截图复用
+	private ByteBuffer pixelBuffer;
+	// 行翻转缓存
+	private byte[] topRow;
+	private byte[] bottomRow;
+	// 截图Bitmap,多次截图复用
+	private Bitmap screenshotBitmap;
 
 	/**
 	 * 构造函数
@@ -144,29 +152,11 @@ class GLRenderWrapper implements Renderer {
 	 */
 	
 	private Bitmap savePixels(int x, int y, int w, int h) {
-		// 存储图片内容
-		int b[] = new int[w * (y + h)];
-		int bt[] = new int[w * h];
-		IntBuffer ib = IntBuffer.wrap(b);
-		ib.position(0);
-		// 处理图片
-		GLES20.glReadPixels(x, 0, w, y + h, GLES20.GL_RGBA,
-				GLES20.GL_UNSIGNED_BYTE, ib);
-		// 处理成指定的高度和宽度
-		for (int i = 0, k = 0; i < h; i++, k++) {
-			// remember, that OpenGL bitmap is incompatible with Android bitmap
-			// and so, some correction need.
-			for (int j = 0; j < w; j++) {
-				int pix = b[i * w + j];
-				int pb = (pix >> 16) & 0xff;
-				int pr = (pix << 16) & 0x00ff0000;
-				int pix1 = (pix & 0xff00ff00) | pr | pb;
-				bt[(h - k - 1) * w + j] = pix1;
-			}
-		}
-		// 处理成BitMap
-		Bitmap sb = Bitmap.createBitmap(bt, w, h, Bitmap.Config.ARGB_8888);
-		return sb;
+		// 读取像素到复用的缓存中
+		ByteBuffer buffer = getPixelBuffer(w, h);
+		GLES20.glReadPixels(x, y, w, h, GLES20.GL_RGBA,
+				GLES20.GL_UNSIGNED_BYTE, buffer);
+		return createBitmap(buffer, w, h);
 	}
 
 	/**
@@ -180,29 +170,72 @@ class GLRenderWrapper implements Renderer {
 	 * @param gl the current GL reference
 	 */
 	
-	private static Bitmap savePixels(int x, int y, int w, int h, GL10 gl) {
-		// 缓存像素内容
-		int b[] = new int[w * (y + h)];
-		int bt[] = new int[w * h];
-		IntBuffer ib = IntBuffer.wrap(b);
-		ib.position(0);
-		// 处理图片
-		gl.glReadPixels(x, 0, w, y + h, GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, ib);
-		// 处理成指定的高度和宽度
-		for (int i = 0, k = 0; i < h; i++, k++) {
-			// remember, that OpenGL bitmap is incompatible with Android bitmap
-			// and so, some correction need.
-			for (int j = 0; j < w; j++) {
-				int pix = b[i * w + j];
-				int pb = (pix >> 16) & 0xff;
-				int pr = (pix << 16) & 0x00ff0000;
-				int pix1 = (pix & 0xff00ff00) | pr | pb;
-				bt[(h - k - 1) * w + j] = pix1;
-			}
+	private Bitmap savePixels(int x, int y, int w, int h, GL10 gl) {
+		// 读取像素到复用的缓存中
+		ByteBuffer buffer = getPixelBuffer(w, h);
+		gl.glReadPixels(x, y, w, h, GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, buffer);
+		return createBitmap(buffer, w, h);
+	}
+
+	/**
+	 * 获取像素读取缓存,尺寸变化时重新分配
+	 * Returns the direct buffer the pixels are read into. The buffer is reused between captures.
+	 * 
+	 * @param w the width of the frame
+	 * @param h the height of the frame
+	 * @return a direct buffer holding at least w * h RGBA pixels
+	 */
+
+	private ByteBuffer getPixelBuffer(int w, int h) {
+		int size = w * h * 4;
+
+		if (pixelBuffer == null || pixelBuffer.capacity() < size) {
+			pixelBuffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+		}
+		if (topRow == null || topRow.length != w * 4) {
+			topRow = new byte[w * 4];
+			bottomRow = new byte[w * 4];
+		}
+		pixelBuffer.clear();
+		pixelBuffer.limit(size);
+		return pixelBuffer;
+	}
+
+	/**
+	 * 把读取的像素复制到Bitmap中.
+	 * OpenGL的行顺序是从下到上,因此按行整体交换进行翻转.
+	 * RGBA字节顺序与ARGB_8888在内存中的顺序一致,可以直接复制,不需要逐个像素转换
+	 * Copies the read pixels into a reused bitmap. OpenGL rows are bottom up, so rows are
+	 * swapped in bulk. The RGBA byte order read from OpenGL is the in-memory layout of 
+	 * an ARGB_8888 bitmap, so no per pixel channel swap is needed.
+	 * 
+	 * @param buffer the pixels read from OpenGL
+	 * @param w the width of the frame
+	 * @param h the height of the frame
+	 * @return the bitmap
+	 */
+
+	private Bitmap createBitmap(ByteBuffer buffer, int w, int h) {
+		int stride = w * 4;
+
+		for (int top = 0, bottom = h - 1; top < bottom; top++, bottom--) {
+			buffer.position(top * stride);
+			buffer.get(topRow);
+			buffer.position(bottom * stride);
+			buffer.get(bottomRow);
+			buffer.position(top * stride);
+			buffer.put(bottomRow);
+			buffer.position(bottom * stride);
+			buffer.put(topRow);
+		}
+		buffer.rewind();
+		// 复用上一次的Bitmap,尺寸变化或已被释放时重新创建
+		if (screenshotBitmap == null || screenshotBitmap.isRecycled()
+				|| screenshotBitmap.getWidth() != w || screenshotBitmap.getHeight() != h) {
+			screenshotBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
 		}
-		// 处理成Bitmap
-		Bitmap sb = Bitmap.createBitmap(bt, w, h, Bitmap.Config.ARGB_8888);
-		return sb;
+		screenshotBitmap.copyPixelsFromBuffer(buffer);
+		return screenshotBitmap;
 	}
 
 }
@@ -0,0 +1,263 @@
+package com.robotium.solo;
+
+import android.app.Instrumentation;
+import android.graphics.PointF;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.MotionEvent.PointerCoords;
+import android.view.MotionEvent.PointerProperties;
+
+/**
+ * 手势执行工具类,Tapper,Swiper,Zoomer,Rotator和Illustrator共用
+ * 手势先编译成一条预先计算好的采样时间线,再按固定节奏发送,发送时不再计算坐标也不再创建对象
+ * Plays gestures compiled into a precomputed timeline of pointer samples. The samples are
+ * stored as parallel arrays of primitives and injected on a fixed schedule, reusing the same
+ * {@code PointerProperties} and {@code PointerCoords} objects and recycling every {@code MotionEvent}.
+ */
+
+class GestureEngine {
+	// 最多支持的手指数
+	static final int MAX_POINTERS = 2;
+	// 采样频率120Hz
+	static final int SAMPLE_RATE_HZ = 120;
+	// 时间线初始容量
+	private static final int INITIAL_CAPACITY = 128;
+	// Instrument 用于发送事件
+	private final Instrumentation inst;
+	// 复用的手指属性
+	private final PointerProperties[] properties = new PointerProperties[MAX_POINTERS];
+	// 复用的手指坐标
+	private final PointerCoords[] coords = new PointerCoords[MAX_POINTERS];
+	// 每个采样相对按下时间的偏移,单位ms
+	private long[] offsets;
+	// 每个采样的事件类型
+	private int[] actions;
+	// 每个采样的手指数
+	private int[] pointerCounts;
+	// 每个采样每个手指的坐标和压力,下标为 采样*MAX_POINTERS+手指
+	private float[] xs;
+	private float[] ys;
+	private float[] pressures;
+	// 时间线中的采样数
+	private int size;
+	// 事件来源
+	private int source;
+
+	/**
+	 * 构造函数
+	 * Constructs this object.
+	 *
+	 * @param inst the {@code Instrumentation} instance
+	 */
+
+	public GestureEngine(Instrumentation inst) {
+		this.inst = inst;
+		for(int i = 0; i < MAX_POINTERS; i++){
+			properties[i] = new PointerProperties();
+			properties[i].id = i;
+			coords[i] = new PointerCoords();
+			coords[i].size = 1;
+		}
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * 获取第index个采样相对按下时间的偏移,按采样频率计算,不会累计舍入误差
+	 * Returns the offset of a sample from the down time. Offsets are computed from the sample
+	 * index so that rounding does not accumulate.
+	 *
+	 * @param index the index of the sample
+	 * @return the offset in milliseconds
+	 */
+
+	static long getSampleOffset(int index) {
+		return index * 1000L / SAMPLE_RATE_HZ;
+	}
+
+	/**
+	 * 清空时间线,开始编译新的手势
+	 * Clears the timeline before a new gesture is compiled.
+	 *
+	 * @param source the source of the events, e.g. {@code InputDevice.SOURCE_TOUCHSCREEN}
+	 * @param toolType the tool type of the pointers, e.g. {@code MotionEvent.TOOL_TYPE_FINGER}
+	 */
+
+	public void reset(int source, int toolType) {
+		this.source = source;
+		for(int i = 0; i < MAX_POINTERS; i++){
+			properties[i].toolType = toolType;
+		}
+		size = 0;
+	}
+
+	/**
+	 * 添加一个单指采样
+	 * Adds a sample of a single pointer to the timeline.
+	 *
+	 * @param offset the offset from the down time in milliseconds
+	 * @param action the action of the event
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param pressure the pressure
+	 */
+
+	public void addSample(long offset, int action, float x, float y, float pressure) {
+		int index = add(offset, action, 1);
+		xs[index] = x;
+		ys[index] = y;
+		pressures[index] = pressure;
+	}
+
+	/**
+	 * 添加一个双指采样,pointerCount为1时只发送第一个手指
+	 * Adds a sample of two pointers to the timeline. Only the first pointer is sent if
+	 * {@code pointerCount} is 1.
+	 *
+	 * @param offset the offset from the down time in milliseconds
+	 * @param action the action of the event
+	 * @param pointerCount the number of pointers in the event
+	 * @param x1 the x coordinate of the first pointer
+	 * @param y1 the y coordinate of the first pointer
+	 * @param x2 the x coordinate of the second pointer
+	 * @param y2 the y coordinate of the second pointer
+	 */
+
+	public void addSample(long offset, int action, int pointerCount, float x1, float y1, float x2, float y2) {
+		int index = add(offset, action, pointerCount);
+		xs[index] = x1;
+		ys[index] = y1;
+		pressures[index] = 1;
+		xs[index + 1] = x2;
+		ys[index + 1] = y2;
+		pressures[index + 1] = 1;
+	}
+
+	/**
+	 * 添加两个手指按下,并在指定时间内从起点匀速移动到终点的采样,手指不松开
+	 * Adds the samples of two pointers going down and moving in straight lines from their
+	 * start points to their end points. The pointers are not lifted.
+	 *
+	 * @param startPoint1 the start point of the first pointer
+	 * @param startPoint2 the start point of the second pointer
+	 * @param endPoint1 the end point of the first pointer
+	 * @param endPoint2 the end point of the second pointer
+	 * @param durationMs the duration of the movement in milliseconds
+	 */
+
+	public void addTwoPointerDrag(PointF startPoint1, PointF startPoint2, PointF endPoint1, PointF endPoint2, int durationMs) {
+		float startX1 = startPoint1.x;
+		float startY1 = startPoint1.y;
+		float startX2 = startPoint2.x;
+		float startY2 = startPoint2.y;
+		// 先按下第一个手指,再按下第二个
+		addSample(0, MotionEvent.ACTION_DOWN, 1, startX1, startY1, startX2, startY2);
+		addSample(0, MotionEvent.ACTION_POINTER_DOWN + (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT),
+				2, startX1, startY1, startX2, startY2);
+		// 按采样频率计算移动步数,每步的坐标由起点直接算出,不累计误差
+		int numMoves = durationMs * SAMPLE_RATE_HZ / 1000;
+		float stepX1 = (endPoint1.x - startX1) / numMoves;
+		float stepY1 = (endPoint1.y - startY1) / numMoves;
+		float stepX2 = (endPoint2.x - startX2) / numMoves;
+		float stepY2 = (endPoint2.y - startY2) / numMoves;
+		for(int i = 1; i <= numMoves; i++){
+			addSample(getSampleOffset(i), MotionEvent.ACTION_MOVE, 2,
+					startX1 + stepX1 * i, startY1 + stepY1 * i, startX2 + stepX2 * i, startY2 + stepY2 * i);
+		}
+	}
+
+	/**
+	 * 按固定节奏发送时间线中的所有采样
+	 * 每个采样的发送时间由按下时间加偏移得到,发送慢了下一个采样会少等,误差不会累计
+	 * Injects all samples of the timeline. Every sample is sent at the down time plus its offset,
+	 * so time spent injecting one sample is taken from the wait before the next one instead of
+	 * delaying the rest of the gesture.
+	 *
+	 * @param ignoreSecurityExceptions true if a {@code SecurityException}, thrown when the event
+	 * is injected into another application, should be ignored
+	 */
+
+	public void play(boolean ignoreSecurityExceptions) {
+		long downTime = SystemClock.uptimeMillis();
+		for(int i = 0; i < size; i++){
+			long eventTime = downTime + offsets[i];
+			long delay = eventTime - SystemClock.uptimeMillis();
+			if(delay > 0){
+				SystemClock.sleep(delay);
+			}
+			int pointerCount = pointerCounts[i];
+			int index = i * MAX_POINTERS;
+			for(int pointer = 0; pointer < pointerCount; pointer++){
+				coords[pointer].x = xs[index + pointer];
+				coords[pointer].y = ys[index + pointer];
+				coords[pointer].pressure = pressures[index + pointer];
+			}
+			MotionEvent event = MotionEvent.obtain(downTime, eventTime, actions[i], pointerCount,
+					properties, coords, 0, 0, 1, 1, 0, 0, source, 0);
+			try{
+				inst.sendPointerSync(event);
+			}catch(SecurityException e){
+				if(!ignoreSecurityExceptions){
+					throw e;
+				}
+			}finally{
+				// sendPointerSync返回后事件已处理完,可以回收
+				event.recycle();
+			}
+		}
+	}
+
+	/**
+	 * 添加采样的公共部分,容量不够时扩容
+	 * Adds the common part of a sample, growing the timeline when it is full.
+	 *
+	 * @return the index of the first pointer of the sample in the coordinate arrays
+	 */
+
+	private int add(long offset, int action, int pointerCount) {
+		if(size == offsets.length){
+			grow();
+		}
+		offsets[size] = offset;
+		actions[size] = action;
+		pointerCounts[size] = pointerCount;
+		return size++ * MAX_POINTERS;
+	}
+
+	/**
+	 * 创建指定容量的时间线
+	 * Allocates the arrays of the timeline.
+	 *
+	 * @param capacity the number of samples the timeline can hold
+	 */
+
+	private void allocate(int capacity) {
+		offsets = new long[capacity];
+		actions = new int[capacity];
+		pointerCounts = new int[capacity];
+		xs = new float[capacity * MAX_POINTERS];
+		ys = new float[capacity * MAX_POINTERS];
+		pressures = new float[capacity * MAX_POINTERS];
+	}
+
+	/**
+	 * 容量翻倍,保留已有采样.扩容后的数组在之后的手势中继续复用
+	 * Doubles the capacity of the timeline, keeping the samples added so far. The larger arrays
+	 * are kept for later gestures.
+	 */
+
+	private void grow() {
+		long[] oldOffsets = offsets;
+		int[] oldActions = actions;
+		int[] oldPointerCounts = pointerCounts;
+		float[] oldXs = xs;
+		float[] oldYs = ys;
+		float[] oldPressures = pressures;
+		allocate(oldOffsets.length * 2);
+		System.arraycopy(oldOffsets, 0, offsets, 0, size);
+		System.arraycopy(oldActions, 0, actions, 0, size);
+		System.arraycopy(oldPointerCounts, 0, pointerCounts, 0, size);
+		System.arraycopy(oldXs, 0, xs, 0, size * MAX_POINTERS);
+		System.arraycopy(oldYs, 0, ys, 0, size * MAX_POINTERS);
+		System.arraycopy(oldPressures, 0, pressures, 0, size * MAX_POINTERS);
+	}
+}
@@ -0,0 +1,67 @@
+package com.robotium.solo;
+
+import java.lang.ref.WeakReference;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebView;
+
+/**
+ * 通过addJavascriptInterface安装到WebView中的对象,RobotiumWeb.js通过它发送查询结果,不经过onJsPrompt
+ * Object installed into a {@code WebView} with {@code addJavascriptInterface} when
+ * {@link Solo.Config#webTransport} is {@code JAVASCRIPT_INTERFACE}. RobotiumWeb.js sends its messages
+ * through it instead of the synchronous prompt dialog machinery.
+ * <br><br>
+ * The object is only visible to pages loaded after it was installed, RobotiumWeb.js falls back to
+ * prompt until then. Its methods carry {@code @JavascriptInterface}, which Android 4.2 and later
+ * require for apps targeting API level 17 or higher and older versions ignore. Only use this
+ * transport in test builds: on Android versions before 4.2 any JavaScript in the page can reach
+ * the bridge object.
+ */
+
+public final class RobotiumJavaScriptBridge {
+	// 页面中bridge对象的名字
+	static final String NAME = "robotiumBridge";
+	// 处理消息的WebChromeClient
+	private final RobotiumWebClient robotiumWebClient;
+	// bridge所在的WebView
+	private final WeakReference<WebView> webView;
+
+	/**
+	 * 构造函数
+	 * Constructs this object.
+	 *
+	 * @param robotiumWebClient the {@code RobotiumWebClient} handling the messages
+	 * @param webView the {@code WebView} the bridge is installed in
+	 */
+
+	RobotiumJavaScriptBridge(RobotiumWebClient robotiumWebClient, WebView webView){
+		this.robotiumWebClient = robotiumWebClient;
+		this.webView = new WeakReference<WebView>(webView);
+	}
+
+	/**
+	 * 获取需要注入页面的RobotiumWeb.js
+	 * Returns the JavaScript to inject into the page.
+	 *
+	 * @return the JavaScript to inject
+	 */
+
+	@JavascriptInterface
+	public String getScript(){
+		return robotiumWebClient.getJavaScript();
+	}
+
+	/**
+	 * 接收RobotiumWeb.js发送的消息,在JavaBridge线程中调用
+	 * Receives a message from RobotiumWeb.js. Called on the JavaBridge thread.
+	 *
+	 * @param message the message, in the same format as the messages sent through prompt
+	 */
+
+	@JavascriptInterface
+	public void send(String message){
+		WebView view = webView.get();
+		if(view != null){
+			robotiumWebClient.handleMessage(message, view, WebElementCreator.TRANSPORT_JAVASCRIPT_INTERFACE);
+		}
+	}
+}
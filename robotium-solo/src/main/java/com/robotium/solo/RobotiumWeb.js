@@ -7,29 +7,36 @@
 
 // 获取所有的Web元素
 function allWebElements() {
-	for (var key in document.all){
-		try{
-			// 通过Robotium WebClient
-			promptElement(document.all[key]);			
-		}catch(ignored){}
+	try{
+		var elements = document.getElementsByTagName('*');
+		for (var i = 0; i < elements.length && !hasEnoughResults(); i++){
+			try{
+				// 通过Robotium WebClient
+				promptElement(elements[i]);			
+			}catch(ignored){}
+		}
+	}finally{
+		// 通知脚本执行完毕,出错时也通知,避免缓存的结果混入下一次查询
+		finished();
 	}
-	// 通知脚本执行完毕
-	finished();
 }
 
 // 遍历所有 TEXT节点
 function allTexts() {
-	//初始化一个range
-	var range = document.createRange();
-	var walk=document.createTreeWalker(document.body, NodeFilter.SHOW_TEXT, null, false); 
-	while(n=walk.nextNode()){
-		try{
-			// 通知Robotium WebClient
-			promptText(n, range);
-		}catch(ignored){}
-	} 
-	// 通知脚本执行完毕
-	finished();
+	try{
+		//初始化一个range
+		var range = document.createRange();
+		var walk=document.createTreeWalker(document.body, NodeFilter.SHOW_TEXT, null, false); 
+		while(!hasEnoughResults() && (n=walk.nextNode())){
+			try{
+				// 通知Robotium WebClient
+				promptText(n, range);
+			}catch(ignored){}
+		} 
+	}finally{
+		// 通知脚本执行完毕
+		finished();
+	}
 }
 
 // 点击Element
@@ -40,157 +47,168 @@ function clickElement(element){
 	element.dispatchEvent(e);
 }
 
-//查找指定id的element,click为true则点击,为false则告诉Robotium WebClient相关信息
-function id(id, click) {
-	// 获取id对应的 Element
-	var element = document.getElementById(id);
-	// 找到Element则发送点击
-	if(element != null){ 
-		// true则点击
-		if(click == 'true'){
-			clickElement(element);
-		}
-		// 否则告诉Robotium WebClient相关信息
-		else{
-			promptElement(element);
+// element是否在body中(不包括body本身),与从body开始的TreeWalker遍历范围一致
+function isInBody(body, element){
+	return element != body && body.contains(element);
+}
+
+// 点击第一个element或者把所有element信息提交给RobotiumWebClient,click为true时返回true
+function clickOrPromptElements(elements, click){
+	for (var i = 0; i < elements.length && !hasEnoughResults(); i++) {
+		try{
+			// click为 true则点击，并退出
+			if(click == 'true'){
+				clickElement(elements[i]);
+				return true;
+			}
+			//提交element相关信息给RobotiumWebClient
+			else{
+				promptElement(elements[i]);
+			}	
+		}catch(ignored){}  
+	}
+	return false;
+}
+
+// 按照name获取body中的element,通过getElementsByName索引查找
+// root和body由调用处写成document和document.body参数传入,设置了web frame时WebUtils.setWebFrame会把它们替换成frame的document
+function getElementsByNameInBody(root, body, name){
+	var matches = [];
+	if(name == null || name.trim().length == 0){
+		return matches;
+	}
+	var elements = root.getElementsByName(name);
+	for (var i = 0; i < elements.length; i++){
+		if(isInBody(body, elements[i])){
+			matches.push(elements[i]);
 		}
-	} 
-	// 按照id未找到则遍历所有元素查询
-	else {
-		for (var key in document.all){
-			try{
-				element = document.all[key];
-				// 找到则执行后续操作
-				if(element.id == id) {
-					// 为true则点击
-					if(click == 'true'){
-						clickElement(element);
-						return;
-					}
-					// 其他则告知 robotiumWebClient相关信息
-					else{
-						promptElement(element);
-					}
-				}
-			} catch(ignored){}			
+	}
+	return matches;
+}
+
+// 按照classname获取body中className完全相同的element,通过getElementsByClassName索引查找,root和body的传入方式同上
+function getElementsByClassNameInBody(root, body, nameOfClass){
+	var matches = [];
+	if(nameOfClass == null || nameOfClass.trim().length == 0){
+		return matches;
+	}
+	// getElementsByClassName按class单词匹配,再过滤出className完全相同的element
+	var elements = root.getElementsByClassName(nameOfClass);
+	for (var i = 0; i < elements.length; i++){
+		var element = elements[i];
+		if(typeof element.className == 'string' && element.className == nameOfClass && isInBody(body, element)){
+			matches.push(element);
 		}
 	}
-	 // js执行完毕
-	finished(); 
+	return matches;
 }
 
-// 按照xpath查找相关elements,click为true则点击查找到的第一个，非true则提交elements相关信息给RobotiumWebClient
-function xpath(xpath, click) {
-	// 按照xpath查找指定elements
-	var elements = document.evaluate(xpath, document, null, XPathResult.ORDERED_NODE_ITERATOR_TYPE, null); 
-
-	if (elements){
-		// 遍历elements
-		var element = elements.iterateNext();
-		while(element) {
-			// 为true则点击
+// 创建只接受指定内容text节点的TreeWalker,trim为true时比较去掉空格后的内容
+function createTextWalker(text, trim){
+	var expected = trim ? text.trim() : text;
+	var filter = function(node){
+		var textContent = trim ? node.textContent.trim() : node.textContent;
+		return textContent == expected ? NodeFilter.FILTER_ACCEPT : NodeFilter.FILTER_SKIP;
+	};
+	return document.createTreeWalker(document.body, NodeFilter.SHOW_TEXT, filter, false);
+}
+
+//查找指定id的element,click为true则点击,为false则告诉Robotium WebClient相关信息
+function id(id, click) {
+	try{
+		// 获取id对应的 Element
+		var element = document.getElementById(id);
+		// 找到Element则发送点击
+		if(element != null){ 
+			// true则点击
 			if(click == 'true'){
 				clickElement(element);
-				return;
 			}
-			// 其他则提交相关信息给RobotiumWebClient
+			// 否则告诉Robotium WebClient相关信息
 			else{
 				promptElement(element);
-				element = elements.iterateNext();
 			}
-		}
-		// 脚本执行结束
-		finished();
+		} 
+		// getElementById未找到时,文档中没有该id的element,不再遍历所有元素
+	}finally{
+		// js执行完毕
+		finished(); 
 	}
 }
 
-// 按照css查找相关elements,click为 true则点击找到的第一个，否则提交相关elements信息给RobotiumWebClient
-function cssSelector(cssSelector, click) {
-	// 按照css查找相关elements
-	var elements = document.querySelectorAll(cssSelector);
-	// 遍历elements
-	for (var key in elements) {
-		if(elements != null){ 
-			try{
-				// click为 true则点击，并退出
+// 按照xpath查找相关elements,click为true则点击查找到的第一个，非true则提交elements相关信息给RobotiumWebClient
+function xpath(xpath, click) {
+	try{
+		// 按照xpath查找指定elements
+		var elements = document.evaluate(xpath, document, null, XPathResult.ORDERED_NODE_ITERATOR_TYPE, null); 
+
+		if (elements){
+			// 遍历elements
+			var element = elements.iterateNext();
+			while(element && !hasEnoughResults()) {
+				// 为true则点击
 				if(click == 'true'){
-					clickElement(elements[key]);
+					clickElement(element);
 					return;
 				}
-				//提交element相关信息给RobotiumWebClient
+				// 其他则提交相关信息给RobotiumWebClient,文本节点等不是element的结果跳过
 				else{
-					promptElement(elements[key]);
-				}	
-			}catch(ignored){}  
+					try{
+						promptElement(element);
+					}catch(ignored){}
+					element = elements.iterateNext();
+				}
+			}
 		}
+	}finally{
+		// 脚本执行结束
+		finished();
+	}
+}
+
+// 按照css查找相关elements,click为 true则点击找到的第一个，否则提交相关elements信息给RobotiumWebClient
+function cssSelector(cssSelector, click) {
+	try{
+		// 按照css查找相关elements
+		var elements = document.querySelectorAll(cssSelector);
+		clickOrPromptElements(elements, click);
+	}finally{
+		// 脚本执行结束
+		finished(); 
 	}
-	// 脚本执行结束
-	finished(); 
 }
 
 // 按照name查找对应的element.click为true则点击遇到的第一个，否则提交element信息给RobotiumWebClient
 function name(name, click) {
-	// 获取遍历实例
-	var walk=document.createTreeWalker(document.body, NodeFilter.SHOW_ELEMENT, null, false); 
-	// 遍历
-	while(n=walk.nextNode()){
-		try{
-			// 检查是否是指定的name
-			var attributeName = n.getAttribute('name');
-			if(attributeName != null && attributeName.trim().length>0 && attributeName == name){
-				// click为 true则点击，并退出
-				if(click == 'true'){
-					clickElement(n);
-					return;
-				}
-				//提交element相关信息给RobotiumWebClient
-				else{
-					promptElement(n);
-				}	
-			}
-		}catch(ignored){} 
-	} 
-	// 脚本执行结束
-	finished();
+	try{
+		// 按照name索引查找
+		clickOrPromptElements(getElementsByNameInBody(document, document.body, name), click);
+	}finally{
+		// 脚本执行结束
+		finished();
+	}
 }
 
 // 按照classname查找element,click为true则点击遇到的第一个，否则提交element信息给RobotiumWebClient
 function className(nameOfClass, click) {
-	// 获取遍历实例
-	var walk=document.createTreeWalker(document.body, NodeFilter.SHOW_ELEMENT, null, false); 
-	// 遍历
-	while(n=walk.nextNode()){
-		try{
-			var className = n.className; 
-			// 找到对应的element
-			if(className != null && className.trim().length>0 && className == nameOfClass) {
-				// click为 true则点击，并退出
-				if(click == 'true'){
-					clickElement(n);
-					return;
-				}
-				//提交element相关信息给RobotiumWebClient  
-				else{
-					promptElement(n);
-				}	
-			}
-		}catch(ignored){} 
-	} 
-	// 脚本执行结束
-	finished(); 
+	try{
+		// 按照classname索引查找
+		clickOrPromptElements(getElementsByClassNameInBody(document, document.body, nameOfClass), click);
+	}finally{
+		// 脚本执行结束
+		finished(); 
+	}
 }
 
 // 按照text查找element,click为true则点击遇到的第一个，否则提交element信息给RobotiumWebClient
 function textContent(text, click) {
-	// 获取对应的遍历实例
-	var range = document.createRange();
-	var walk=document.createTreeWalker(document.body,NodeFilter.SHOW_TEXT,null,false); 
-	// 遍历
-	while(n=walk.nextNode()){ 
-		try{
-			var textContent = n.textContent; 
-			 // 找到指定的element
-			if(textContent.trim() == text.trim()){  
+	try{
+		// 获取对应的遍历实例,只遍历内容匹配的text节点
+		var range = document.createRange();
+		var walk=createTextWalker(text, true); 
+		// 遍历
+		while(!hasEnoughResults() && (n=walk.nextNode())){ 
+			try{
 				// click为 true则点击，并退出
 				if(click == 'true'){
 					clickElement(n);
@@ -200,35 +218,24 @@ function textContent(text, click) {
 				else{
 					promptText(n, range);
 				}
-			}
-		}catch(ignored){} 
-	} 
-	// 脚本执行结束
-
-	finished();  
+			}catch(ignored){} 
+		} 
+	}finally{
+		// 脚本执行结束
+		finished();  
+	}
 }
 
 // 按照tagname查找element,click为true则点击遇到的第一个，否则提交element信息给RobotiumWebClient
 function tagName(tagName, click) {
-	// 查找对应的element
-	var elements = document.getElementsByTagName(tagName);
-	for (var key in elements) {
-		if(elements != null){ 
-			try{
-				// click为 true则点击，并退出
-				if(click == 'true'){
-					clickElement(elements[key]);
-					return;
-				}
-				//提交element相关信息给RobotiumWebClient
-				else{
-					promptElement(elements[key]);
-				}	
-			}catch(ignored){}  
-		}
+	try{
+		// 查找对应的element
+		var elements = document.getElementsByTagName(tagName);
+		clickOrPromptElements(elements, click);
+	}finally{
+		// 脚本执行结束
+		finished();
 	}
-	// 脚本执行结束
-	finished();
 }
 
 // 指定id的element设置text
@@ -261,33 +268,27 @@ function enterTextByCssSelector(cssSelector, text) {
 
 // 指定name的element设置text
 function enterTextByName(name, text) {
-	var walk=document.createTreeWalker(document.body, NodeFilter.SHOW_ELEMENT, null, false); 
-	while(n=walk.nextNode()){
-		var attributeName = n.getAttribute('name');
-		if(attributeName != null && attributeName.trim().length>0 && attributeName == name) 
-			n.value=text;  
-	} 
+	var elements = getElementsByNameInBody(document, document.body, name);
+	for (var i = 0; i < elements.length; i++){
+		elements[i].value = text;
+	}
 	finished();
 }
 
 // 指定classname的element设置text,参数名字写成className较好
 function enterTextByClassName(name, text) {
-	var walk=document.createTreeWalker(document.body, NodeFilter.SHOW_ELEMENT, null, false); 
-	while(n=walk.nextNode()){
-		var className = n.className; 
-		if(className != null && className.trim().length>0 && className == name) 
-			n.value=text;
+	var elements = getElementsByClassNameInBody(document, document.body, name);
+	for (var i = 0; i < elements.length; i++){
+		elements[i].value = text;
 	}
 	finished();
 }
 
 // 按照已有text内容查找对应的element并设置为指定的text
 function enterTextByTextContent(textContent, text) {
-	var walk=document.createTreeWalker(document.body,NodeFilter.SHOW_TEXT, null, false); 
+	var walk=createTextWalker(textContent, false); 
 	while(n=walk.nextNode()){ 
-		var textValue = n.textContent; 
-		if(textValue == textContent) 
-			n.parentNode.value = text; 
+		n.parentNode.value = text; 
 	}
 	finished();
 }
@@ -330,8 +331,8 @@ function promptElement(element) {
 	// 获取element大小,
 	var rect = element.getBoundingClientRect();
 	// 可见的element拼接字符串，传递给Robotium WebClient
-	if(rect.width > 0 && rect.height > 0 && rect.left >= 0 && rect.top >= 0){
-		prompt(id + ';,' + text + ';,' + name + ";," + className + ";," + tagName + ";," + rect.left + ';,' + rect.top + ';,' + rect.width + ';,' + rect.height + ';,' + attributes);
+	if(rect.width > 0 && rect.height > 0 && rect.left >= 0 && rect.top >= 0 && isSufficientlyShown(rect)){
+		addResult(id + ';,' + text + ';,' + name + ";," + className + ";," + tagName + ";," + rect.left + ';,' + rect.top + ';,' + rect.width + ';,' + rect.height + ';,' + attributes);
 	}
 }
 
@@ -345,17 +346,131 @@ function promptText(element, range) {
 		// 获取尺寸信息
 		var rect = range.getBoundingClientRect();
 		// 只返回可见的 Element
-		if(rect.width > 0 && rect.height > 0 && rect.left >= 0 && rect.top >= 0){
+		if(rect.width > 0 && rect.height > 0 && rect.left >= 0 && rect.top >= 0 && isSufficientlyShown(rect)){
 			var id = element.parentNode.id;
 			var name = element.parentNode.getAttribute('name');
 			var className = element.parentNode.className;
 			var tagName = element.parentNode.tagName;
-			prompt(id + ';,' + text + ';,' + name + ";," + className + ";," + tagName + ";," + rect.left + ';,' + rect.top + ';,' + rect.width + ';,' + rect.height);
+			addResult(id + ';,' + text + ';,' + name + ";," + className + ";," + tagName + ";," + rect.left + ';,' + rect.top + ';,' + rect.width + ';,' + rect.height);
 		}
 	}
 }
 
-// js执行完毕，通知Robotium WebClient 完成了
+// element中心是否在WebView可见区域的底部之上,robotiumVisibleHeight小于0时不过滤
+function isSufficientlyShown(rect){
+	return robotiumVisibleHeight < 0 || rect.top + Math.floor(rect.height / 2) < robotiumVisibleHeight;
+}
+
+// 当前查询的编号,由Robotium在调用函数前设置
+var robotiumQuery = 0;
+// 只需要可见的element时为WebView可见区域的高度(页面坐标),由Robotium在调用函数前设置
+var robotiumVisibleHeight = -1;
+// 找到多少个element后停止查找,小于等于0时不限制,由Robotium在调用函数前设置
+var robotiumMaxResults = 0;
+// 当前查询已找到的element数量
+var robotiumResultCount = 0;
+// 是否通过JavaScript bridge发送消息,由Robotium在调用函数前设置
+var robotiumUseBridge = false;
+
+// 开始一次查询,由Robotium在调用函数前调用
+function robotiumStartQuery(query, visibleHeight, maxResults, useBridge){
+	robotiumQuery = query;
+	robotiumVisibleHeight = visibleHeight;
+	robotiumMaxResults = maxResults;
+	robotiumResultCount = 0;
+	robotiumUseBridge = useBridge;
+	// 上一次查询出错时可能留下未发送的结果和状态,不能带到这次查询中
+	robotiumResults = [];
+	robotiumResultsLength = 0;
+	robotiumState = null;
+}
+
+// 发送消息给Robotium,JavaScript bridge可用时不经过prompt.bridge只在安装后加载的页面中可用,之前的页面使用prompt
+function robotiumSend(message){
+	if(robotiumUseBridge && window.robotiumBridge && window.robotiumBridge.send){
+		window.robotiumBridge.send(message);
+	}
+	else{
+		prompt(message);
+	}
+}
+
+// 是否已找到足够的element,查找函数此时停止遍历
+function hasEnoughResults(){
+	return robotiumMaxResults > 0 && robotiumResultCount >= robotiumMaxResults;
+}
+// 缓存的element信息,一次性发送给Robotium WebClient,避免每个element都调用一次prompt
+var robotiumResults = [];
+// 缓存的element信息长度
+var robotiumResultsLength = 0;
+
+// 缓存element信息,超过256K字符时先发送一次
+function addResult(result){
+	robotiumResultCount++;
+	robotiumResults.push(result);
+	robotiumResultsLength += result.length;
+	if(robotiumResultsLength >= 262144){
+		sendResults();
+	}
+}
+
+// 把缓存的element信息用\u001e分隔后,加上查询编号一次性发送给Robotium WebClient
+function sendResults(){
+	if(robotiumResults.length > 0){
+		robotiumSend('robotium-elements:' + robotiumQuery + ':' + robotiumResults.join('\u001e'));
+	}
+	robotiumResults = [];
+	robotiumResultsLength = 0;
+}
+
+// js执行完毕，发送剩余的element信息并通知Robotium WebClient 完成了,可缓存的查询同时发送查询开始时的页面状态
 function finished(){
-	prompt('robotium-finished');
+	sendResults();
+	robotiumSend('robotium-finished:' + robotiumQuery + (robotiumState != null ? ':' + robotiumState : ''));
+	robotiumState = null;
+}
+
+// 页面变化计数,DOM变化,滚动,输入或资源加载时增加
+var robotiumGeneration = 0;
+// 页面标识,页面重新加载后脚本重新注入,标识随之改变
+var robotiumPage = new Date().getTime() + '-' + Math.random();
+// 可缓存查询开始时的页面状态
+var robotiumState = null;
+// 监听DOM变化的MutationObserver,浏览器不支持时为null,此时不使用缓存
+var robotiumObserver = null;
+
+// 页面发生变化
+function robotiumPageChanged(){
+	robotiumGeneration++;
 }
+
+// 监听页面变化,DOM变化之外,滚动等改变element位置的事件也视为页面变化
+function robotiumObservePage(){
+	var MutationObserverType = window.MutationObserver || window.WebKitMutationObserver;
+	if(!MutationObserverType){
+		return;
+	}
+	try{
+		var observer = new MutationObserverType(robotiumPageChanged);
+		observer.observe(document.documentElement, {childList: true, subtree: true, attributes: true, characterData: true});
+		var events = ['scroll', 'resize', 'input', 'change', 'load', 'transitionend', 'webkitTransitionEnd', 'animationend', 'webkitAnimationEnd'];
+		for (var i = 0; i < events.length; i++){
+			// scroll和load事件不冒泡,在捕获阶段监听
+			window.addEventListener(events[i], robotiumPageChanged, true);
+		}
+		robotiumObserver = observer;
+	}catch(ignored){}
+}
+
+// 页面状态与Robotium缓存结果的状态相同时通知Robotium使用缓存的结果并返回true,否则记录查询开始时的状态
+function robotiumUnchangedSince(state){
+	var currentState = robotiumObserver != null ? robotiumPage + '.' + robotiumGeneration : null;
+	if(currentState != null && currentState == state){
+		robotiumSend('robotium-unchanged:' + robotiumQuery);
+		return true;
+	}
+	robotiumState = currentState;
+	return false;
+}
+
+robotiumObservePage();
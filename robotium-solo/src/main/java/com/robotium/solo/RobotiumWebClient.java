@@ -1,6 +1,8 @@
 package com.robotium.solo;
 
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import android.app.Instrumentation;
 import android.graphics.Bitmap;
 import android.os.Message;
@@ -32,6 +34,10 @@ class RobotiumWebClient extends WebChromeClient{
 	private WebChromeClient robotiumWebClient;
 	// 原生的client
 	private WebChromeClient originalWebChromeClient = null;
+	// 页面中还没有RobotiumWeb.js时注入的脚本
+	private volatile String javaScript;
+	// 已安装JavaScript bridge的WebView
+	private final Map<WebView, RobotiumJavaScriptBridge> bridges = new WeakHashMap<WebView, RobotiumJavaScriptBridge>();
 
 
 	/**
@@ -53,26 +59,88 @@ class RobotiumWebClient extends WebChromeClient{
 	 * Enables JavaScript in the given {@code WebViews} objects.
 	 * 
 	 * @param webViews the {@code WebView} objects to enable JavaScript in
+	 * @param originalWebChromeClient the {@code WebChromeClient} of the app, prompts not sent by Robotium are passed on to it
+	 * @param installBridge true if a {@link RobotiumJavaScriptBridge} should be installed as well
 	 */
 
-	public void enableJavascriptAndSetRobotiumWebClient(List<WebView> webViews, WebChromeClient originalWebChromeClient){
+	public void enableJavascriptAndSetRobotiumWebClient(List<WebView> webViews, WebChromeClient originalWebChromeClient, final boolean installBridge){
 		// 保留原有的ChromeClient.用作需要原生调用时使用
 		this.originalWebChromeClient = originalWebChromeClient;
 
-		for(final WebView webView : webViews){
-
-			if(webView != null){ 
-				inst.runOnMainSync(new Runnable() {
-					public void run() {
+		final List<WebView> webViewsToSetUp = webViews;
+		// 所有WebView在一次主线程调用中设置
+		inst.runOnMainSync(new Runnable() {
+			public void run() {
+				for(WebView webView : webViewsToSetUp){
+					if(webView != null){ 
 						// 设置可执行js
 						webView.getSettings().setJavaScriptEnabled(true);
 						// 设置使用 Robotium定制的WebClient
 						webView.setWebChromeClient(robotiumWebClient);
-
+						// 安装JavaScript bridge,之后加载的页面中可用
+						if(installBridge && !bridges.containsKey(webView)){
+							RobotiumJavaScriptBridge bridge = new RobotiumJavaScriptBridge(RobotiumWebClient.this, webView);
+							webView.addJavascriptInterface(bridge, RobotiumJavaScriptBridge.NAME);
+							bridges.put(webView, bridge);
+						}
 					}
-				});
+				}
 			}
+		});
+	}
+
+	/**
+	 * 设置页面中还没有RobotiumWeb.js时注入的脚本
+	 * Sets the JavaScript injected into pages that do not have it yet.
+	 * 
+	 * @param javaScript the JavaScript to inject
+	 */
+
+	public void setJavaScript(String javaScript){
+		this.javaScript = javaScript;
+	}
+
+	/**
+	 * 获取页面中还没有RobotiumWeb.js时注入的脚本
+	 * Returns the JavaScript injected into pages that do not have it yet.
+	 * 
+	 * @return the JavaScript to inject
+	 */
+
+	String getJavaScript(){
+		return javaScript;
+	}
+
+	/**
+	 * 处理RobotiumWeb.js发送的消息,不是Robotium的消息时返回false
+	 * Handles a message sent by RobotiumWeb.js through prompt or the {@link RobotiumJavaScriptBridge}.
+	 * 
+	 * @param message the message
+	 * @param view the {@code WebView} the message was sent from
+	 * @param transport how the message was sent, for the query statistics
+	 * @return true if the message was sent by Robotium
+	 */
+
+	boolean handleMessage(String message, WebView view, String transport){
+		if(message == null){
+			return false;
+		}
+		// 批量发送的element信息,一次解析所有element
+		if(message.startsWith(WebElementCreator.ELEMENTS_PREFIX)){
+			webElementCreator.createWebElementsAndAddInList(message, view, transport);
+			return true;
 		}
+		// 执行完成则通知等待该查询的线程
+		if(message.startsWith(WebElementCreator.FINISHED_PREFIX)){
+			webElementCreator.setFinished(message, view);
+			return true;
+		}
+		// 页面没有变化,使用缓存的结果
+		if(message.startsWith(WebElementCreator.UNCHANGED_PREFIX)){
+			webElementCreator.setUnchanged(message);
+			return true;
+		}
+		return false;
 	}
 
 	/**
@@ -82,15 +150,13 @@ class RobotiumWebClient extends WebChromeClient{
 
 	@Override
 	public boolean onJsPrompt(WebView view, String url, String message,	String defaultValue, JsPromptResult r) {
-		// 对于robotium执行的js进行特殊处理,解析js执行返回信息，并构造相关的WebElement信息
-		if(message != null && (message.contains(";,") || message.contains("robotium-finished"))){
-			// 执行完成则设置解析完毕
-			if(message.equals("robotium-finished")){
-				webElementCreator.setFinished(true);
-			}
-			else{
-				webElementCreator.createWebElementAndAddInList(message, view);
-			}
+		// 页面中还没有注入脚本,返回脚本内容由页面执行
+		if("robotium-script".equals(message)){
+			r.confirm(javaScript);
+			return true;
+		}
+		// Robotium发送的element信息,执行结束等消息
+		else if(handleMessage(message, view, WebElementCreator.TRANSPORT_PROMPT)){
 			// 直接确认掉，避免影响页面
 			r.confirm();
 			return true;
@@ -0,0 +1,23 @@
+package com.robotium.solo;
+
+import java.io.IOException;
+import android.graphics.Bitmap;
+
+/**
+ * 写入截取的原始图片的序列写入接口,编码器不压缩图片
+ * A {@code ScreenshotSequenceWriter} that writes the captured bitmaps. The encoder does not
+ * compress frames written by it.
+ */
+
+interface ScreenshotBitmapSequenceWriter extends ScreenshotSequenceWriter {
+
+	/**
+	 * 写入一帧
+	 * Writes a captured frame.
+	 *
+	 * @param bitmap the captured frame
+	 * @throws IOException if the frame could not be written
+	 */
+
+	void writeFrame(Bitmap bitmap) throws IOException;
+}
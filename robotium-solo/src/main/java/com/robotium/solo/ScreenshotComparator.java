@@ -0,0 +1,195 @@
+package com.robotium.solo;
+
+import java.io.File;
+import java.io.IOException;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+/**
+ * 截图比较工具类,把截图与保存的基准图片逐块比较
+ * Compares a captured frame with a baseline image. Both are split into tiles, tiles with equal
+ * hashes are skipped and only the changed tiles are compared pixel by pixel.
+ * <br><br>
+ * The baseline is decoded one row of tiles at a time with a {@code BitmapRegionDecoder}, so apart
+ * from the optional diff image no full frame is allocated.
+ */
+
+class ScreenshotComparator {
+	// 方块边长
+	static final int TILE_SIZE = 64;
+	// 差异像素颜色
+	private static final int DIFF_COLOR = 0xffff0000;
+	// 忽略区域颜色
+	private static final int IGNORED_COLOR = 0xff808080;
+	// 截图方块像素
+	private final int[] actualTile = new int[TILE_SIZE * TILE_SIZE];
+	// 基准图片方块像素
+	private final int[] baselineTile = new int[TILE_SIZE * TILE_SIZE];
+	// 差异图片方块像素
+	private final int[] diffTile = new int[TILE_SIZE * TILE_SIZE];
+	// 方块中被忽略的像素
+	private final boolean[] ignoredPixels = new boolean[TILE_SIZE * TILE_SIZE];
+	// 当前方块的范围
+	private final Rect tileBounds = new Rect();
+
+	/**
+	 * 比较截图与基准图片
+	 * Compares a frame with a baseline image.
+	 *
+	 * @param actual the captured frame
+	 * @param baselineFile the baseline image, PNG or JPEG
+	 * @param tolerance the maximum difference of each color channel, from 0 to 255, for pixels to be considered equal
+	 * @param ignoreRegions the regions of the frame not to compare, may be {@code null}
+	 * @param diff a bitmap of the size of the frame to draw the differences into, or {@code null}
+	 * @return the result of the comparison
+	 * @throws IOException if the baseline could not be read
+	 */
+
+	public synchronized ScreenshotComparison compare(Bitmap actual, File baselineFile, int tolerance, Rect[] ignoreRegions, Bitmap diff) throws IOException {
+		final int width = actual.getWidth();
+		final int height = actual.getHeight();
+		BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(baselineFile.getPath(), false);
+		if(decoder == null) {
+			throw new IOException("Can't decode " + baselineFile);
+		}
+
+		try {
+			// 尺寸不一致时不做比较
+			if(decoder.getWidth() != width || decoder.getHeight() != height) {
+				return new ScreenshotComparison(width * height, width * height, false);
+			}
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+			Rect stripBounds = new Rect();
+			int comparedPixels = 0;
+			int differentPixels = 0;
+
+			// 每次只解码基准图片的一行方块
+			for(int y = 0; y < height; y += TILE_SIZE) {
+				int h = Math.min(TILE_SIZE, height - y);
+				stripBounds.set(0, y, width, y + h);
+				Bitmap strip = decoder.decodeRegion(stripBounds, options);
+				if(strip == null) {
+					throw new IOException("Can't decode " + baselineFile);
+				}
+
+				for(int x = 0; x < width; x += TILE_SIZE) {
+					int w = Math.min(TILE_SIZE, width - x);
+					int pixelCount = w * h;
+					actual.getPixels(actualTile, 0, w, x, y, w, h);
+					strip.getPixels(baselineTile, 0, w, x, 0, w, h);
+					int ignored = maskIgnoredPixels(ignoreRegions, x, y, w, h);
+					comparedPixels += pixelCount - ignored;
+					int different = 0;
+					// 哈希值相同的方块直接跳过
+					if(ScreenshotDeltaWriter.hashPixels(actualTile, pixelCount) != ScreenshotDeltaWriter.hashPixels(baselineTile, pixelCount)) {
+						different = comparePixels(pixelCount, tolerance, diff != null);
+						differentPixels += different;
+					}
+					if(diff != null) {
+						drawDiffTile(diff, x, y, w, h, ignored > 0, different > 0);
+					}
+				}
+				strip.recycle();
+			}
+			return new ScreenshotComparison(comparedPixels, differentPixels, true);
+		} finally {
+			decoder.recycle();
+		}
+	}
+
+	/**
+	 * 把方块中忽略区域的像素清零,返回忽略的像素数量
+	 * Clears the pixels of the current tile that are inside an ignored region and returns their number.
+	 */
+
+	private int maskIgnoredPixels(Rect[] ignoreRegions, int x, int y, int w, int h) {
+		if(ignoreRegions == null) {
+			return 0;
+		}
+		boolean intersects = false;
+		tileBounds.set(x, y, x + w, y + h);
+		for(Rect region : ignoreRegions) {
+			if(region != null && Rect.intersects(region, tileBounds)) {
+				intersects = true;
+				break;
+			}
+		}
+		if(!intersects) {
+			return 0;
+		}
+		int ignored = 0;
+		for(int i = 0; i < w * h; i++) {
+			int px = x + i % w;
+			int py = y + i / w;
+			ignoredPixels[i] = false;
+			for(Rect region : ignoreRegions) {
+				if(region != null && region.contains(px, py)) {
+					ignoredPixels[i] = true;
+					actualTile[i] = 0;
+					baselineTile[i] = 0;
+					ignored++;
+					break;
+				}
+			}
+		}
+		return ignored;
+	}
+
+	/**
+	 * 逐个像素比较方块,返回不同的像素数量.需要差异图片时把不同的像素标记在diffTile中
+	 * Compares the pixels of the current tile and returns the number of pixels that differ by more
+	 * than the tolerance. Different pixels are marked in {@code diffTile} if requested.
+	 */
+
+	private int comparePixels(int pixelCount, int tolerance, boolean markDifferences) {
+		int different = 0;
+		for(int i = 0; i < pixelCount; i++) {
+			int a = actualTile[i];
+			int b = baselineTile[i];
+			boolean differs = a != b && (Math.abs((a >>> 24) - (b >>> 24)) > tolerance
+					|| Math.abs(((a >> 16) & 0xff) - ((b >> 16) & 0xff)) > tolerance
+					|| Math.abs(((a >> 8) & 0xff) - ((b >> 8) & 0xff)) > tolerance
+					|| Math.abs((a & 0xff) - (b & 0xff)) > tolerance);
+			if(differs) {
+				different++;
+			}
+			if(markDifferences) {
+				diffTile[i] = differs ? DIFF_COLOR : 0;
+			}
+		}
+		return different;
+	}
+
+	/**
+	 * 绘制差异图片中的一个方块:不同的像素为红色,忽略的像素为灰色,其余为淡化的截图
+	 * Draws a tile of the diff image. Different pixels are red, ignored pixels are grey and
+	 * the others are the faded pixels of the frame.
+	 */
+
+	private void drawDiffTile(Bitmap diff, int x, int y, int w, int h, boolean hasIgnored, boolean hasDifferences) {
+		for(int i = 0; i < w * h; i++) {
+			if(hasIgnored && ignoredPixels[i]) {
+				diffTile[i] = IGNORED_COLOR;
+			}
+			else if(!hasDifferences || diffTile[i] != DIFF_COLOR) {
+				diffTile[i] = fade(actualTile[i]);
+			}
+		}
+		diff.setPixels(diffTile, 0, w, x, y, w, h);
+	}
+
+	/**
+	 * 把像素颜色向白色淡化
+	 * Blends a pixel three quarters towards white.
+	 */
+
+	private static int fade(int pixel) {
+		int r = (((pixel >> 16) & 0xff) + 3 * 0xff) >> 2;
+		int g = (((pixel >> 8) & 0xff) + 3 * 0xff) >> 2;
+		int b = ((pixel & 0xff) + 3 * 0xff) >> 2;
+		return 0xff000000 | (r << 16) | (g << 8) | b;
+	}
+}
@@ -0,0 +1,109 @@
+package com.robotium.solo;
+
+import java.io.File;
+
+/**
+ * 截图与基准图片的比较结果
+ * The result of comparing the screen with a baseline image. Returned by
+ * {@link Solo#compareScreenshot(String, int, android.graphics.Rect...)}.
+ *
+ */
+
+public class ScreenshotComparison {
+	// 参与比较的像素数量,不包括忽略区域
+	private final int comparedPixels;
+	// 不同的像素数量
+	private final int differentPixels;
+	// 截图与基准图片尺寸是否一致
+	private final boolean sameSize;
+	// 差异图片
+	private File diffFile;
+
+	/**
+	 * 构造函数
+	 * Constructs this object.
+	 *
+	 * @param comparedPixels the number of pixels compared, ignored regions excluded
+	 * @param differentPixels the number of pixels that differ
+	 * @param sameSize true if the screen and the baseline have the same size
+	 */
+
+	ScreenshotComparison(int comparedPixels, int differentPixels, boolean sameSize) {
+		this.comparedPixels = comparedPixels;
+		this.differentPixels = differentPixels;
+		this.sameSize = sameSize;
+	}
+
+	/**
+	 * 获取相似度,0到1之间,1表示完全一致
+	 * Returns the share of compared pixels that match the baseline, from 0 to 1.
+	 * Screens of a different size than the baseline have a similarity of 0.
+	 *
+	 * @return the similarity, 1 if the screen matches the baseline
+	 */
+
+	public double getSimilarity() {
+		if(!sameSize) {
+			return 0;
+		}
+		if(comparedPixels == 0) {
+			return 1;
+		}
+		return 1 - (double) differentPixels / comparedPixels;
+	}
+
+	/**
+	 * 获取不同的像素数量
+	 * Returns the number of pixels that differ from the baseline by more than the tolerance.
+	 *
+	 * @return the number of different pixels
+	 */
+
+	public int getNumberOfDifferentPixels() {
+		return differentPixels;
+	}
+
+	/**
+	 * 获取参与比较的像素数量
+	 * Returns the number of pixels compared, pixels in ignored regions are not counted.
+	 *
+	 * @return the number of compared pixels
+	 */
+
+	public int getNumberOfComparedPixels() {
+		return comparedPixels;
+	}
+
+	/**
+	 * 截图与基准图片尺寸是否一致
+	 * Returns true if the screen has the same size as the baseline.
+	 *
+	 * @return true if the screen has the same size as the baseline
+	 */
+
+	public boolean isSameSize() {
+		return sameSize;
+	}
+
+	/**
+	 * 获取差异图片,没有差异或未保存时返回null
+	 * Returns the saved diff image. Different pixels are red, ignored regions are grey and
+	 * the rest of the screen is faded.
+	 *
+	 * @return the diff image, or {@code null} if there was no difference or it could not be saved
+	 */
+
+	public File getDiffFile() {
+		return diffFile;
+	}
+
+	void setDiffFile(File diffFile) {
+		this.diffFile = diffFile;
+	}
+
+	@Override
+	public String toString() {
+		return "ScreenshotComparison[similarity=" + getSimilarity() + ", differentPixels=" + differentPixels +
+				", comparedPixels=" + comparedPixels + ", diffFile=" + diffFile + "]";
+	}
+}
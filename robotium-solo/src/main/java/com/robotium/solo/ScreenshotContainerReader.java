@@ -0,0 +1,223 @@
+package com.robotium.solo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+/**
+ * 截图序列容器读取工具类,可以导出容器中的任意一帧图片
+ * Reads screenshot sequences saved with {@code ScreenshotSequenceOutput.CONTAINER} and extracts
+ * the individual images.
+ * <br><br>
+ * The reader does not depend on Android and can be run on the host:
+ * <pre>
+ * java -cp robotium-solo.jar com.robotium.solo.ScreenshotContainerReader sequence.rsc [frame] [output]
+ * </pre>
+ * Without a frame number every image is extracted next to the sequence file.
+ */
+
+public class ScreenshotContainerReader {
+	// 文件
+	private final RandomAccessFile file;
+	// 图片类型
+	private final int fileType;
+	// 每一帧图片在文件中的位置
+	private final long[] imageOffsets;
+	// 每一帧图片的长度
+	private final int[] imageLengths;
+
+	/**
+	 * 构造函数,读取文件头和帧索引
+	 * Constructs this object and reads the frame index. If the sequence was not closed properly
+	 * the index is rebuilt by scanning the frames.
+	 *
+	 * @param sequenceFile the sequence file to read
+	 * @throws IOException if the file is not a screenshot container
+	 */
+
+	public ScreenshotContainerReader(File sequenceFile) throws IOException {
+		file = new RandomAccessFile(sequenceFile, "r");
+
+		if(file.readInt() != ScreenshotContainerWriter.MAGIC || file.readInt() != ScreenshotContainerWriter.VERSION) {
+			file.close();
+			throw new IOException(sequenceFile + " is not a screenshot container");
+		}
+		fileType = file.readInt();
+
+		ArrayList<long[]> index = readIndex();
+		if(index == null) {
+			index = scanFrames();
+		}
+		imageOffsets = new long[index.size()];
+		imageLengths = new int[index.size()];
+		for(int i = 0; i < imageOffsets.length; i++) {
+			imageOffsets[i] = index.get(i)[0];
+			imageLengths[i] = (int) index.get(i)[1];
+		}
+	}
+
+	/**
+	 * 获取帧数
+	 * Returns the number of frames in the sequence.
+	 *
+	 * @return the number of frames
+	 */
+
+	public int getFrameCount() {
+		return imageOffsets.length;
+	}
+
+	/**
+	 * 获取图片文件后缀
+	 * Returns the file extension of the images, ".jpg" or ".png".
+	 *
+	 * @return the file extension of the images
+	 */
+
+	public String getFileExtension() {
+		return fileType == ScreenshotContainerWriter.FILE_TYPE_PNG ? ".png" : ".jpg";
+	}
+
+	/**
+	 * 读取指定帧的图片数据
+	 * Returns the compressed image of a frame.
+	 *
+	 * @param frameNumber the frame to read, starting at 0
+	 * @return the JPEG or PNG image
+	 * @throws IOException if the file could not be read
+	 */
+
+	public byte[] readImage(int frameNumber) throws IOException {
+		if(frameNumber < 0 || frameNumber >= imageOffsets.length) {
+			throw new IllegalArgumentException("Frame " + frameNumber + " does not exist");
+		}
+		byte[] image = new byte[imageLengths[frameNumber]];
+		file.seek(imageOffsets[frameNumber]);
+		file.readFully(image);
+		return image;
+	}
+
+	/**
+	 * 关闭文件
+	 * Closes the sequence file.
+	 */
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * 命令行入口,导出图片
+	 * Extracts images of a sequence.
+	 *
+	 * @param args the sequence file, optionally followed by a frame number and an output file
+	 */
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("Usage: ScreenshotContainerReader <sequence.rsc> [frame] [output]");
+			System.exit(1);
+		}
+		File sequenceFile = new File(args[0]);
+		ScreenshotContainerReader reader = new ScreenshotContainerReader(sequenceFile);
+		String prefix = sequenceFile.getPath().replaceFirst("\\.rsc$", "");
+
+		try {
+			if(args.length > 1) {
+				int frameNumber = Integer.parseInt(args[1]);
+				File output = new File(args.length > 2 ? args[2] : prefix + "_" + frameNumber + reader.getFileExtension());
+				saveImage(reader.readImage(frameNumber), output);
+			}
+			else {
+				for(int i = 0; i < reader.getFrameCount(); i++) {
+					saveImage(reader.readImage(i), new File(prefix + "_" + i + reader.getFileExtension()));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * 读取文件末尾的帧索引,文件未正常关闭时返回null
+	 * Reads the index written when the sequence was closed, or returns null if there is none.
+	 */
+
+	private ArrayList<long[]> readIndex() throws IOException {
+		if(file.length() < 24) {
+			return null;
+		}
+		file.seek(file.length() - 12);
+		if(file.readInt() != ScreenshotContainerWriter.TRAILER_MAGIC) {
+			return null;
+		}
+		file.seek(file.readLong());
+		if(file.readInt() != ScreenshotContainerWriter.INDEX_MARKER) {
+			return null;
+		}
+		int frameCount = file.readInt();
+		byte[] entries = new byte[frameCount * 20];
+		file.readFully(entries);
+		ArrayList<long[]> index = new ArrayList<long[]>(frameCount);
+		for(int i = 0, j = 0; i < frameCount; i++, j += 20) {
+			index.add(new long[] {readLong(entries, j), readInt(entries, j + 8)});
+		}
+		return index;
+	}
+
+	/**
+	 * 逐帧扫描文件重建帧索引,遇到预分配的空白区域时停止
+	 * Rebuilds the frame index by scanning the frames. Scanning stops at the pre-allocated space,
+	 * so the last frame written before an unexpected stop may be lost.
+	 */
+
+	private ArrayList<long[]> scanFrames() throws IOException {
+		ArrayList<long[]> index = new ArrayList<long[]>();
+		long offset = 12;
+
+		while(offset + 16 <= file.length()) {
+			file.seek(offset);
+			if(file.readInt() != ScreenshotContainerWriter.FRAME_MARKER) {
+				break;
+			}
+			file.readLong();
+			int length = file.readInt();
+			// 文件已预分配,只有后面紧跟下一帧或索引时才能确定该帧已完整写入
+			if(length < 0 || offset + 20 + length > file.length()) {
+				break;
+			}
+			file.seek(offset + 16 + length);
+			int nextMarker = file.readInt();
+			if(nextMarker != ScreenshotContainerWriter.FRAME_MARKER && nextMarker != ScreenshotContainerWriter.INDEX_MARKER) {
+				break;
+			}
+			index.add(new long[] {offset + 16, length});
+			offset += 16 + length;
+		}
+		return index;
+	}
+
+	private static long readLong(byte[] bytes, int offset) {
+		return ((long) readInt(bytes, offset) << 32) | (readInt(bytes, offset + 4) & 0xffffffffL);
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+	}
+
+	/**
+	 * 保存图片文件
+	 * Saves an image.
+	 */
+
+	private static void saveImage(byte[] image, File output) throws IOException {
+		FileOutputStream out = new FileOutputStream(output);
+		try {
+			out.write(image);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package com.robotium.solo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * 截图序列容器写入工具类,把压缩后的每一帧顺序追加到同一个预分配的文件中
+ * Appends the compressed frames of a screenshot sequence to a single pre-allocated file through a
+ * buffered {@code FileChannel}, so that recording does not pay for creating a file per frame.
+ * <br><br>
+ * File layout (big endian):
+ * <pre>
+ * header:  int MAGIC, int VERSION, int fileType (0 JPEG, 1 PNG)
+ * frame:   int FRAME_MARKER, long uptime, int length, byte[length] image
+ * index:   int INDEX_MARKER, int frameCount, frameCount x (long imageOffset, int length, long uptime)
+ * trailer: int TRAILER_MAGIC, long indexOffset
+ * </pre>
+ * The index and trailer are written and the pre-allocated space is truncated when the sequence is
+ * closed. Use {@link ScreenshotContainerReader} to extract the images.
+ */
+
+class ScreenshotContainerWriter implements ScreenshotEncodedSequenceWriter {
+	static final int MAGIC = 0x52534331;
+	static final int VERSION = 1;
+	static final int FRAME_MARKER = 0x46524d45;
+	static final int INDEX_MARKER = 0x494e4458;
+	static final int TRAILER_MAGIC = 0x52534349;
+	static final int FILE_TYPE_JPEG = 0;
+	static final int FILE_TYPE_PNG = 1;
+	// 每次预分配的文件大小
+	private static final long PREALLOCATION_SIZE = 8 * 1024 * 1024;
+	// 写缓冲区大小
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private final String LOG_TAG = "Robotium";
+	// 序列文件
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	// 写缓冲区
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final DataOutputStream out = new DataOutputStream(new ChannelOutputStream());
+	// 已写入文件的位置,不包括缓冲区中的字节
+	private long position = 0;
+	// 已预分配的文件大小
+	private long allocated = 0;
+	// 每一帧图片在文件中的位置
+	private long[] imageOffsets = new long[64];
+	// 每一帧图片的长度
+	private int[] imageLengths = new int[64];
+	// 每一帧的时间
+	private long[] uptimes = new long[64];
+	// 已写入的帧数
+	private int frameCount = 0;
+	// 写入失败后不再追加帧,也不写入索引
+	private boolean failed = false;
+
+	/**
+	 * 构造函数,创建文件并写入文件头
+	 * Constructs this object and writes the file header.
+	 *
+	 * @param file the file to write
+	 * @param fileType the type of the images, {@code FILE_TYPE_JPEG} or {@code FILE_TYPE_PNG}
+	 * @throws IOException if the file could not be created
+	 */
+
+	public ScreenshotContainerWriter(File file, int fileType) throws IOException {
+		this.file = file;
+		file.getParentFile().mkdir();
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		randomAccessFile.setLength(0);
+		channel = randomAccessFile.getChannel();
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(fileType);
+	}
+
+	/**
+	 * 获取序列文件
+	 * Returns the sequence file.
+	 */
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 追加一帧压缩后的图片
+	 * Appends a compressed frame.
+	 *
+	 * @param encodedFrame the compressed image
+	 */
+
+	public void writeFrame(ByteArrayOutputStream encodedFrame) throws IOException {
+		// 写入失败后文件末尾可能是不完整的帧,不再追加
+		if(failed) {
+			throw new IOException("Writing " + file.getName() + " failed before, frame not written");
+		}
+		if(frameCount == imageOffsets.length) {
+			growIndex();
+		}
+		long uptime = SystemClock.uptimeMillis();
+		long imageOffset;
+		try {
+			out.writeInt(FRAME_MARKER);
+			out.writeLong(uptime);
+			out.writeInt(encodedFrame.size());
+			imageOffset = getOffset();
+			encodedFrame.writeTo(out);
+		} catch (IOException e) {
+			failed = true;
+			throw e;
+		}
+		// 帧写入完成后才加入索引
+		imageOffsets[frameCount] = imageOffset;
+		imageLengths[frameCount] = encodedFrame.size();
+		uptimes[frameCount] = uptime;
+		frameCount++;
+	}
+
+	/**
+	 * 写入索引,截掉多余的预分配空间并关闭文件.写入失败的序列不写入索引
+	 * Writes the frame index and the trailer, truncates the pre-allocated space and closes the file.
+	 * No index is written if a frame could not be written.
+	 */
+
+	public void close() {
+		try {
+			// 写入失败的序列不写入索引,避免索引指向不完整的帧
+			if(failed) {
+				Log.d(LOG_TAG, "Screenshot sequence " + file.getName() + " is incomplete, a frame could not be written!");
+			}
+			else {
+				long indexOffset = getOffset();
+				out.writeInt(INDEX_MARKER);
+				out.writeInt(frameCount);
+				for(int i = 0; i < frameCount; i++) {
+					out.writeLong(imageOffsets[i]);
+					out.writeInt(imageLengths[i]);
+					out.writeLong(uptimes[i]);
+				}
+				out.writeInt(TRAILER_MAGIC);
+				out.writeLong(indexOffset);
+				flushBuffer();
+			}
+			channel.truncate(position);
+			channel.force(false);
+		} catch (IOException e) {
+			Log.d(LOG_TAG, "Can't close the screenshot sequence!");
+			e.printStackTrace();
+		} finally {
+			try {
+				randomAccessFile.close();
+			} catch (IOException ignored) {}
+		}
+	}
+
+	/**
+	 * 获取下一个字节在文件中的位置,包括缓冲区中的字节
+	 * Returns the file offset of the next byte written, including the buffered bytes.
+	 */
+
+	private long getOffset() {
+		return position + buffer.position();
+	}
+
+	/**
+	 * 把缓冲区内容写入文件,空间不足时先预分配
+	 * Writes the buffered bytes to the channel, pre-allocating more space first if needed.
+	 */
+
+	private void flushBuffer() throws IOException {
+		buffer.flip();
+		if(position + buffer.remaining() > allocated) {
+			allocated = position + buffer.remaining() + PREALLOCATION_SIZE;
+			randomAccessFile.setLength(allocated);
+		}
+		while(buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * 扩大帧索引
+	 * Doubles the capacity of the frame index.
+	 */
+
+	private void growIndex() {
+		long[] offsets = new long[frameCount * 2];
+		int[] lengths = new int[frameCount * 2];
+		long[] times = new long[frameCount * 2];
+		System.arraycopy(imageOffsets, 0, offsets, 0, frameCount);
+		System.arraycopy(imageLengths, 0, lengths, 0, frameCount);
+		System.arraycopy(uptimes, 0, times, 0, frameCount);
+		imageOffsets = offsets;
+		imageLengths = lengths;
+		uptimes = times;
+	}
+
+	/**
+	 * 写入写缓冲区的输出流,缓冲区满时写入文件
+	 * Writes into the direct buffer and flushes it to the channel when full.
+	 */
+
+	private class ChannelOutputStream extends OutputStream {
+
+		public void write(int b) throws IOException {
+			if(!buffer.hasRemaining()) {
+				flushBuffer();
+			}
+			buffer.put((byte) b);
+		}
+
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			while(length > 0) {
+				if(!buffer.hasRemaining()) {
+					flushBuffer();
+				}
+				int count = Math.min(length, buffer.remaining());
+				buffer.put(bytes, offset, count);
+				offset += count;
+				length -= count;
+			}
+		}
+	}
+}
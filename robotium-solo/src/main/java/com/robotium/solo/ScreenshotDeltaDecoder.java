@@ -0,0 +1,403 @@
+package com.robotium.solo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * 增量截图序列解码工具类,可以还原序列中的任意一帧
+ * Decodes screenshot sequences saved with {@code ScreenshotSequenceOutput.DELTA}. Any frame can be
+ * reconstructed, starting from the closest preceding key frame.
+ * <br><br>
+ * The decoder does not depend on Android and can be run on the host:
+ * <pre>
+ * java -cp robotium-solo.jar com.robotium.solo.ScreenshotDeltaDecoder sequence.rsd [frame] [output.png]
+ * </pre>
+ * Without a frame number every frame is extracted as a PNG next to the sequence file.
+ */
+
+public class ScreenshotDeltaDecoder {
+	// 文件
+	private final RandomAccessFile file;
+	// 方块边长
+	private final int tileSize;
+	// 每一帧在文件中的位置
+	private final long[] frameOffsets;
+	// 每一帧是否为关键帧
+	private final boolean[] keyFrames;
+	// 解压工具
+	private final Inflater inflater = new Inflater();
+
+	/**
+	 * 构造函数,读取文件头和帧索引
+	 * Constructs this object and reads the frame index. If the sequence was not closed properly
+	 * the index is rebuilt by scanning the frames.
+	 *
+	 * @param sequenceFile the sequence file to decode
+	 * @throws IOException if the file is not a screenshot sequence
+	 */
+
+	public ScreenshotDeltaDecoder(File sequenceFile) throws IOException {
+		file = new RandomAccessFile(sequenceFile, "r");
+
+		if(file.readInt() != ScreenshotDeltaWriter.MAGIC || file.readInt() != ScreenshotDeltaWriter.VERSION) {
+			file.close();
+			throw new IOException(sequenceFile + " is not a screenshot sequence");
+		}
+		tileSize = file.readInt();
+
+		ArrayList<long[]> index = readIndex();
+		if(index == null) {
+			index = scanFrames();
+		}
+		frameOffsets = new long[index.size()];
+		keyFrames = new boolean[index.size()];
+		for(int i = 0; i < frameOffsets.length; i++) {
+			frameOffsets[i] = index.get(i)[0];
+			keyFrames[i] = index.get(i)[1] != 0;
+		}
+	}
+
+	/**
+	 * 获取帧数
+	 * Returns the number of frames in the sequence.
+	 *
+	 * @return the number of frames
+	 */
+
+	public int getFrameCount() {
+		return frameOffsets.length;
+	}
+
+	/**
+	 * 还原指定的帧
+	 * Reconstructs a frame.
+	 *
+	 * @param frameNumber the frame to reconstruct, starting at 0
+	 * @return the reconstructed {@code Frame}
+	 * @throws IOException if the file could not be read
+	 */
+
+	public Frame readFrame(int frameNumber) throws IOException {
+		if(frameNumber < 0 || frameNumber >= frameOffsets.length) {
+			throw new IllegalArgumentException("Frame " + frameNumber + " does not exist");
+		}
+		// 找到之前最近的关键帧
+		int first = frameNumber;
+		while(first > 0 && !keyFrames[first]) {
+			first--;
+		}
+		Frame frame = null;
+		for(int i = first; i <= frameNumber; i++) {
+			frame = applyFrame(frame, i);
+		}
+		return frame;
+	}
+
+	/**
+	 * 关闭文件
+	 * Closes the sequence file.
+	 */
+
+	public void close() throws IOException {
+		inflater.end();
+		file.close();
+	}
+
+	/**
+	 * 把帧保存为PNG图片
+	 * Writes a frame as a PNG image.
+	 *
+	 * @param frame the frame to write
+	 * @param outputStream the stream to write to
+	 * @throws IOException if the image could not be written
+	 */
+
+	public static void writePng(Frame frame, OutputStream outputStream) throws IOException {
+		DataOutputStream out = new DataOutputStream(outputStream);
+		out.write(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(headerBytes);
+		header.writeInt(frame.width);
+		header.writeInt(frame.height);
+		// 8位RGBA
+		header.writeByte(8);
+		header.writeByte(6);
+		header.writeByte(0);
+		header.writeByte(0);
+		header.writeByte(0);
+		writeChunk(out, "IHDR", headerBytes.toByteArray());
+
+		ByteArrayOutputStream imageBytes = new ByteArrayOutputStream();
+		DeflaterOutputStream image = new DeflaterOutputStream(imageBytes, new Deflater(Deflater.BEST_SPEED));
+		byte[] row = new byte[1 + frame.width * 4];
+		for(int y = 0; y < frame.height; y++) {
+			for(int x = 0, j = 1; x < frame.width; x++) {
+				int pixel = frame.pixels[y * frame.width + x];
+				row[j++] = (byte) (pixel >>> 16);
+				row[j++] = (byte) (pixel >>> 8);
+				row[j++] = (byte) pixel;
+				row[j++] = (byte) (pixel >>> 24);
+			}
+			image.write(row);
+		}
+		image.finish();
+		writeChunk(out, "IDAT", imageBytes.toByteArray());
+		writeChunk(out, "IEND", new byte[0]);
+		out.flush();
+	}
+
+	/**
+	 * 命令行入口,导出帧为PNG图片
+	 * Extracts frames of a sequence as PNG images.
+	 *
+	 * @param args the sequence file, optionally followed by a frame number and an output file
+	 */
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("Usage: ScreenshotDeltaDecoder <sequence.rsd> [frame] [output.png]");
+			System.exit(1);
+		}
+		File sequenceFile = new File(args[0]);
+		ScreenshotDeltaDecoder decoder = new ScreenshotDeltaDecoder(sequenceFile);
+		String prefix = sequenceFile.getPath().replaceFirst("\\.rsd$", "");
+
+		try {
+			if(args.length > 1) {
+				int frameNumber = Integer.parseInt(args[1]);
+				File output = new File(args.length > 2 ? args[2] : prefix + "_" + frameNumber + ".png");
+				savePng(decoder.readFrame(frameNumber), output);
+			}
+			else {
+				// 顺序还原所有帧,每一帧只在上一帧的基础上更新
+				Frame frame = null;
+				for(int i = 0; i < decoder.getFrameCount(); i++) {
+					frame = decoder.applyFrame(frame, i);
+					savePng(frame, new File(prefix + "_" + i + ".png"));
+				}
+			}
+		} finally {
+			decoder.close();
+		}
+	}
+
+	/**
+	 * 在上一帧的基础上应用一帧的变化方块
+	 * Applies the tiles stored for a frame on top of the previous frame.
+	 */
+
+	private Frame applyFrame(Frame previous, int frameNumber) throws IOException {
+		DataInputStream in = openAt(frameOffsets[frameNumber]);
+
+		if(in.readInt() != ScreenshotDeltaWriter.FRAME_MARKER) {
+			throw new IOException("Frame " + frameNumber + " is corrupt");
+		}
+		long uptime = in.readLong();
+		int width = in.readInt();
+		int height = in.readInt();
+		in.readByte();
+		int tileCount = in.readInt();
+
+		Frame frame = previous;
+		if(frame == null || frame.width != width || frame.height != height) {
+			frame = new Frame(width, height);
+		}
+		frame.uptime = uptime;
+
+		int tilesX = (width + tileSize - 1) / tileSize;
+		byte[] tileBytes = new byte[tileSize * tileSize * 4];
+		byte[] compressed = new byte[0];
+
+		for(int t = 0; t < tileCount; t++) {
+			int tile = in.readInt();
+			int length = in.readInt();
+			if(compressed.length < length) {
+				compressed = new byte[length];
+			}
+			in.readFully(compressed, 0, length);
+
+			int x = (tile % tilesX) * tileSize;
+			int y = (tile / tilesX) * tileSize;
+			int w = Math.min(tileSize, width - x);
+			int h = Math.min(tileSize, height - y);
+			inflate(compressed, length, tileBytes, w * h * 4);
+
+			for(int row = 0, j = 0; row < h; row++) {
+				int offset = (y + row) * width + x;
+				for(int column = 0; column < w; column++, j += 4) {
+					frame.pixels[offset + column] = ((tileBytes[j] & 0xff) << 24) | ((tileBytes[j + 1] & 0xff) << 16)
+							| ((tileBytes[j + 2] & 0xff) << 8) | (tileBytes[j + 3] & 0xff);
+				}
+			}
+		}
+		return frame;
+	}
+
+	/**
+	 * 解压方块数据
+	 * Inflates the pixels of a tile.
+	 */
+
+	private void inflate(byte[] compressed, int length, byte[] output, int outputLength) throws IOException {
+		inflater.reset();
+		inflater.setInput(compressed, 0, length);
+		try {
+			int inflated = 0;
+			while(inflated < outputLength && !inflater.finished()) {
+				inflated += inflater.inflate(output, inflated, outputLength - inflated);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt tile data");
+		}
+	}
+
+	/**
+	 * 读取文件末尾的帧索引,文件未正常关闭时返回null
+	 * Reads the index written when the sequence was closed, or returns null if there is none.
+	 */
+
+	private ArrayList<long[]> readIndex() throws IOException {
+		if(file.length() < 24) {
+			return null;
+		}
+		file.seek(file.length() - 12);
+		if(file.readInt() != ScreenshotDeltaWriter.TRAILER_MAGIC) {
+			return null;
+		}
+		DataInputStream in = openAt(file.readLong());
+		if(in.readInt() != ScreenshotDeltaWriter.INDEX_MARKER) {
+			return null;
+		}
+		int frameCount = in.readInt();
+		ArrayList<long[]> index = new ArrayList<long[]>(frameCount);
+		for(int i = 0; i < frameCount; i++) {
+			index.add(new long[] {in.readLong(), in.readByte()});
+		}
+		return index;
+	}
+
+	/**
+	 * 逐帧扫描文件重建帧索引
+	 * Rebuilds the frame index by scanning the frames.
+	 */
+
+	private ArrayList<long[]> scanFrames() throws IOException {
+		ArrayList<long[]> index = new ArrayList<long[]>();
+		long offset = 12;
+
+		while(offset + 25 <= file.length()) {
+			DataInputStream in = openAt(offset);
+			if(in.readInt() != ScreenshotDeltaWriter.FRAME_MARKER) {
+				break;
+			}
+			in.readLong();
+			in.readInt();
+			in.readInt();
+			byte keyFrame = in.readByte();
+			int tileCount = in.readInt();
+			long length = 25;
+			for(int t = 0; t < tileCount; t++) {
+				in.readInt();
+				int tileLength = in.readInt();
+				in.skipBytes(tileLength);
+				length += 8 + tileLength;
+			}
+			// 最后一帧未写完整则忽略
+			if(offset + length > file.length()) {
+				break;
+			}
+			index.add(new long[] {offset, keyFrame});
+			offset += length;
+		}
+		return index;
+	}
+
+	/**
+	 * 从指定位置开始读取文件
+	 * Returns a buffered stream reading the file from the given offset.
+	 */
+
+	private DataInputStream openAt(long offset) throws IOException {
+		file.seek(offset);
+		return new DataInputStream(new BufferedInputStream(Channels.newInputStream(file.getChannel()), 64 * 1024));
+	}
+
+	/**
+	 * 保存PNG文件
+	 * Saves a frame as a PNG file.
+	 */
+
+	private static void savePng(Frame frame, File output) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+		try {
+			writePng(frame, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * 写入PNG数据块
+	 * Writes a PNG chunk.
+	 */
+
+	private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+		byte[] typeBytes = type.getBytes("US-ASCII");
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data);
+		out.writeInt(data.length);
+		out.write(typeBytes);
+		out.write(data);
+		out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * 还原后的一帧,像素为ARGB格式
+	 * A reconstructed frame. Pixels are stored as ARGB, row by row.
+	 */
+
+	public static class Frame {
+		/**
+		 * The width of the frame.
+		 */
+		public final int width;
+
+		/**
+		 * The height of the frame.
+		 */
+		public final int height;
+
+		/**
+		 * The ARGB pixels of the frame, row by row.
+		 */
+		public final int[] pixels;
+
+		/**
+		 * The uptime in milliseconds when the frame was captured.
+		 */
+		public long uptime;
+
+		Frame(int width, int height) {
+			this.width = width;
+			this.height = height;
+			this.pixels = new int[width * height];
+		}
+	}
+}
@@ -0,0 +1,257 @@
+package com.robotium.solo;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * 增量截图序列写入工具类,把每一帧划分为多个方块,只保存与上一帧不同的方块
+ * Writes a screenshot sequence as a single append-only delta file. Each frame is split into
+ * tiles and only the tiles that changed since the previous frame are stored, deflated.
+ * A full key frame is stored at a fixed interval so that any frame can be decoded quickly.
+ * <br><br>
+ * File layout (big endian):
+ * <pre>
+ * header:  int MAGIC, int VERSION, int TILE_SIZE
+ * frame:   int FRAME_MARKER, long uptime, int width, int height, byte keyFrame, int tileCount,
+ *          tileCount x (int tileIndex, int length, byte[length] deflated ARGB pixels)
+ * index:   int INDEX_MARKER, int frameCount, frameCount x (long offset, byte keyFrame)
+ * trailer: int TRAILER_MAGIC, long indexOffset
+ * </pre>
+ * The index and trailer are written when the sequence is closed. Use {@link ScreenshotDeltaDecoder}
+ * to reconstruct frames.
+ */
+
+class ScreenshotDeltaWriter implements ScreenshotBitmapSequenceWriter {
+	static final int MAGIC = 0x52534431;
+	static final int VERSION = 1;
+	static final int FRAME_MARKER = 0x46524d45;
+	static final int INDEX_MARKER = 0x494e4458;
+	static final int TRAILER_MAGIC = 0x52534449;
+	// 方块边长
+	static final int TILE_SIZE = 64;
+	// 关键帧间隔
+	static final int KEY_FRAME_INTERVAL = 50;
+
+	private final String LOG_TAG = "Robotium";
+	// 序列文件
+	private final File file;
+	// 写文件流
+	private final DataOutputStream out;
+	// 当前写入位置
+	private long position = 0;
+	// 每一帧在文件中的位置
+	private long[] frameOffsets = new long[64];
+	// 每一帧是否为关键帧
+	private boolean[] keyFrames = new boolean[64];
+	// 已写入的帧数
+	private int frameCount = 0;
+	// 当前帧宽度
+	private int width = -1;
+	// 当前帧高度
+	private int height = -1;
+	// 横向方块数量
+	private int tilesX;
+	// 上一帧每个方块的哈希值
+	private long[] tileHashes;
+	// 当前帧每个方块的哈希值,帧写入完成后成为tileHashes
+	private long[] frameHashes;
+	// 写入失败后不再追加帧,也不写入索引
+	private boolean failed = false;
+	// 方块像素缓存
+	private final int[] tilePixels = new int[TILE_SIZE * TILE_SIZE];
+	// 方块字节缓存
+	private final byte[] tileBytes = new byte[TILE_SIZE * TILE_SIZE * 4];
+	// 压缩缓存
+	private final byte[] deflateBuffer = new byte[8192];
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	// 压缩后的方块数据
+	private final ByteArrayOutputStream tileData = new ByteArrayOutputStream();
+	// 当前帧变化的方块数据
+	private final ByteArrayOutputStream frameData = new ByteArrayOutputStream();
+	private final DataOutputStream frameDataOut = new DataOutputStream(frameData);
+
+	/**
+	 * 构造函数,创建文件并写入文件头
+	 * Constructs this object and writes the file header.
+	 *
+	 * @param file the file to write
+	 * @throws IOException if the file could not be created
+	 */
+
+	public ScreenshotDeltaWriter(File file) throws IOException {
+		this.file = file;
+		file.getParentFile().mkdir();
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(TILE_SIZE);
+		position = 12;
+	}
+
+	/**
+	 * 获取序列文件
+	 * Returns the sequence file.
+	 */
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 写入一帧,只写入与上一帧不同的方块
+	 * Writes the tiles of a frame that changed since the previous frame.
+	 *
+	 * @param bitmap the captured frame
+	 */
+
+	public void writeFrame(Bitmap bitmap) throws IOException {
+		// 写入失败后文件末尾可能是不完整的帧,不再追加
+		if(failed) {
+			throw new IOException("Writing " + file.getName() + " failed before, frame not written");
+		}
+		boolean keyFrame = frameCount % KEY_FRAME_INTERVAL == 0;
+		// 尺寸变化(例如屏幕旋转)时写入关键帧
+		if(bitmap.getWidth() != width || bitmap.getHeight() != height) {
+			width = bitmap.getWidth();
+			height = bitmap.getHeight();
+			tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+			tileHashes = new long[tilesX * ((height + TILE_SIZE - 1) / TILE_SIZE)];
+			frameHashes = new long[tileHashes.length];
+			keyFrame = true;
+		}
+		frameData.reset();
+		int changedTiles = 0;
+
+		for(int tile = 0; tile < tileHashes.length; tile++) {
+			int x = (tile % tilesX) * TILE_SIZE;
+			int y = (tile / tilesX) * TILE_SIZE;
+			int w = Math.min(TILE_SIZE, width - x);
+			int h = Math.min(TILE_SIZE, height - y);
+			bitmap.getPixels(tilePixels, 0, w, x, y, w, h);
+			long hash = hashPixels(tilePixels, w * h);
+			frameHashes[tile] = hash;
+
+			if(keyFrame || hash != tileHashes[tile]) {
+				writeTile(tile, w * h);
+				changedTiles++;
+			}
+		}
+		try {
+			out.writeInt(FRAME_MARKER);
+			out.writeLong(SystemClock.uptimeMillis());
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeByte(keyFrame ? 1 : 0);
+			out.writeInt(changedTiles);
+			frameData.writeTo(out);
+			// 写入文件后才算保存成功,缓冲区中的字节之后写入失败也会被发现
+			out.flush();
+		} catch (IOException e) {
+			failed = true;
+			throw e;
+		}
+		// 帧写入完成后才记录位置并更新方块哈希值,下一帧与已保存的帧比较
+		addFrameOffset(keyFrame);
+		position += 25 + frameData.size();
+		long[] hashes = tileHashes;
+		tileHashes = frameHashes;
+		frameHashes = hashes;
+	}
+
+	/**
+	 * 写入索引并关闭文件
+	 * Writes the frame index and the trailer and closes the file.
+	 */
+
+	public void close() {
+		try {
+			// 写入失败的序列不写入索引,避免索引指向不完整的帧
+			if(failed) {
+				Log.d(LOG_TAG, "Screenshot sequence " + file.getName() + " is incomplete, a frame could not be written!");
+			}
+			else {
+				long indexOffset = position;
+				out.writeInt(INDEX_MARKER);
+				out.writeInt(frameCount);
+				for(int i = 0; i < frameCount; i++) {
+					out.writeLong(frameOffsets[i]);
+					out.writeByte(keyFrames[i] ? 1 : 0);
+				}
+				out.writeInt(TRAILER_MAGIC);
+				out.writeLong(indexOffset);
+			}
+			out.close();
+		} catch (IOException e) {
+			Log.d(LOG_TAG, "Can't close the screenshot sequence!");
+			e.printStackTrace();
+		}
+		deflater.end();
+	}
+
+	/**
+	 * 压缩一个方块并加入当前帧数据
+	 * Deflates the pixels of a tile and appends them to the current frame.
+	 */
+
+	private void writeTile(int tile, int pixelCount) throws IOException {
+		for(int i = 0, j = 0; i < pixelCount; i++) {
+			int pixel = tilePixels[i];
+			tileBytes[j++] = (byte) (pixel >>> 24);
+			tileBytes[j++] = (byte) (pixel >>> 16);
+			tileBytes[j++] = (byte) (pixel >>> 8);
+			tileBytes[j++] = (byte) pixel;
+		}
+		deflater.reset();
+		deflater.setInput(tileBytes, 0, pixelCount * 4);
+		deflater.finish();
+		tileData.reset();
+		while(!deflater.finished()) {
+			int count = deflater.deflate(deflateBuffer);
+			tileData.write(deflateBuffer, 0, count);
+		}
+		frameDataOut.writeInt(tile);
+		frameDataOut.writeInt(tileData.size());
+		tileData.writeTo(frameDataOut);
+	}
+
+	/**
+	 * 记录帧的位置
+	 * Records the offset of the frame that was just written.
+	 */
+
+	private void addFrameOffset(boolean keyFrame) {
+		if(frameCount == frameOffsets.length) {
+			long[] offsets = new long[frameCount * 2];
+			boolean[] keys = new boolean[frameCount * 2];
+			System.arraycopy(frameOffsets, 0, offsets, 0, frameCount);
+			System.arraycopy(keyFrames, 0, keys, 0, frameCount);
+			frameOffsets = offsets;
+			keyFrames = keys;
+		}
+		frameOffsets[frameCount] = position;
+		keyFrames[frameCount] = keyFrame;
+		frameCount++;
+	}
+
+	/**
+	 * 计算方块像素的哈希值
+	 * Returns a 64 bit FNV-1a hash of the given pixels.
+	 */
+
+	static long hashPixels(int[] pixels, int count) {
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < count; i++) {
+			hash ^= pixels[i];
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,23 @@
+package com.robotium.solo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * 写入压缩后图片的序列写入接口,编码器按配置的图片类型压缩后再写入
+ * A {@code ScreenshotSequenceWriter} that writes compressed images. The encoder compresses frames
+ * with the configured file type before handing them over.
+ */
+
+interface ScreenshotEncodedSequenceWriter extends ScreenshotSequenceWriter {
+
+	/**
+	 * 写入一帧压缩后的图片
+	 * Writes a compressed frame.
+	 *
+	 * @param encodedFrame the compressed image
+	 * @throws IOException if the frame could not be written
+	 */
+
+	void writeFrame(ByteArrayOutputStream encodedFrame) throws IOException;
+}
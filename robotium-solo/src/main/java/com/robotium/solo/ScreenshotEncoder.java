@@ -0,0 +1,564 @@
+package com.robotium.solo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import com.robotium.solo.Solo.Config;
+import com.robotium.solo.Solo.Config.ScreenshotFileType;
+import com.robotium.solo.Solo.Config.ScreenshotQueuePolicy;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * 截图编码保存工具类,使用多个工作线程压缩并写入截图,与UI线程的截图操作解耦
+ * Compresses and writes screenshots on a pool of worker threads so that capturing on the
+ * UI thread is decoupled from encoding and writing.
+ *
+ * The number of screenshots in flight is bounded by {@link Config#screenshotQueueCapacity}.
+ * When the queue is full a new screenshot either waits for a free slot or is dropped,
+ * depending on {@link Config#screenshotQueuePolicy}.
+ *
+ * Screenshots are encoded in parallel, but a job chained to a previous job is not written
+ * until the previous one has been written, so files of the same sequence are saved in order.
+ */
+
+class ScreenshotEncoder {
+	private final String LOG_TAG = "Robotium";
+	// 配置文件
+	private final Config config;
+	// Bitmap缓存池,编码完成后归还
+	private final BitmapPool bitmapPool;
+	// 等待编码的截图
+	private final BlockingQueue<Job> queue = new LinkedBlockingQueue<Job>();
+	// 控制同时处理中的截图数量
+	private final Semaphore slots;
+	// 截图位置总数
+	private final int capacity;
+	// 编码线程
+	private Thread[] workers = null;
+	// 已编码的截图数量
+	private long encodedCount = 0;
+	// 编码总耗时,单位ms
+	private long totalEncodeTime = 0;
+
+	/**
+	 * 构造函数
+	 * Constructs this object.
+	 *
+	 * @param config the {@code Config} instance
+	 * @param bitmapPool the {@code BitmapPool} the encoded bitmaps are returned to
+	 */
+
+	public ScreenshotEncoder(Config config, BitmapPool bitmapPool) {
+		this.config = config;
+		this.bitmapPool = bitmapPool;
+		this.capacity = Math.max(1, config.screenshotQueueCapacity);
+		this.slots = new Semaphore(capacity, true);
+	}
+
+	/**
+	 * 启动编码线程,已启动则不做处理
+	 * Starts the worker threads if they are not already running.
+	 */
+
+	public synchronized void start() {
+		if(workers != null) {
+			return;
+		}
+		workers = new Thread[Math.max(1, config.screenshotEncoderThreads)];
+
+		for(int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(new Worker(), "ScreenShotSaver-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * 申请一个截图位置,队列已满时按照配置等待或丢弃.返回null标识截图被丢弃
+	 * previous非null时,该截图会在previous写入完成后才写入
+	 * Reserves a slot for a new screenshot. Should be called before capturing so that a
+	 * dropped screenshot is never captured.
+	 *
+	 * @param name the name of the screenshot
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality)
+	 * @param previous the {@code Job} that has to be written before this one, or {@code null}
+	 * @return a {@code Job} to capture into, or {@code null} if the screenshot was dropped
+	 */
+
+	public Job reserve(String name, int quality, Job previous) {
+		return reserve(name, quality, previous, null);
+	}
+
+	/**
+	 * 申请一个截图位置,截图写入sequenceWriter对应的序列文件.返回null标识截图被丢弃
+	 * Reserves a slot for a frame of a sequence written to a single file by the given writer.
+	 *
+	 * @param name the name of the screenshot
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality)
+	 * @param previous the {@code Job} that has to be written before this one, or {@code null}
+	 * @param sequenceWriter the {@code ScreenshotSequenceWriter} to write the frame with, or {@code null} to save a separate file
+	 * @return a {@code Job} to capture into, or {@code null} if the screenshot was dropped
+	 */
+
+	public Job reserve(String name, int quality, Job previous, ScreenshotSequenceWriter sequenceWriter) {
+		if(config.screenshotQueuePolicy == ScreenshotQueuePolicy.DROP) {
+			if(!slots.tryAcquire()) {
+				Log.d(LOG_TAG, "Screenshot queue is full, dropping " + name);
+				return null;
+			}
+		}
+		else {
+			try {
+				slots.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+		if(sequenceWriter != null) {
+			Job job = new Job(sequenceWriter.getFile(), quality, previous);
+			job.sequenceWriter = sequenceWriter;
+			return job;
+		}
+		return new Job(new File(config.screenshotSavePath, getFileName(name)), quality, previous);
+	}
+
+	/**
+	 * 等待所有截图保存完成
+	 * Waits until every reserved screenshot has been written.
+	 *
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return true if all screenshots were written before the timeout
+	 */
+
+	public boolean flush(long timeout) {
+		try {
+			if(slots.tryAcquire(capacity, timeout, TimeUnit.MILLISECONDS)) {
+				slots.release(capacity);
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * 提交已截取的图片等待编码,bitmap为null则直接结束该任务
+	 * Queues a captured bitmap for encoding. A {@code null} bitmap completes the job without saving.
+	 *
+	 * @param job the reserved {@code Job}
+	 * @param bitmap the captured bitmap
+	 */
+
+	public void submit(Job job, Bitmap bitmap) {
+		job.captured.countDown();
+
+		if(bitmap == null) {
+			Log.d(LOG_TAG, "NULL BITMAP!!");
+			finish(job, false);
+			return;
+		}
+		job.bitmap = bitmap;
+		queue.add(job);
+	}
+
+	/**
+	 * 获取当前等待编码的截图数量
+	 * Returns the number of screenshots waiting to be encoded.
+	 *
+	 * @return the number of screenshots waiting to be encoded
+	 */
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * 获取平均编码耗时,单位ms,不包括等待上一帧的时间
+	 * Returns the average time in milliseconds spent encoding and writing a screenshot, excluding
+	 * the time a sequence frame waits for the previous frame.
+	 *
+	 * @return the average encode latency in milliseconds
+	 */
+
+	public synchronized long getAverageEncodeLatency() {
+		if(encodedCount == 0) {
+			return 0;
+		}
+		return totalEncodeTime / encodedCount;
+	}
+
+	/**
+	 * 结束任务,释放截图位置
+	 * Completes a job and frees its slot.
+	 */
+
+	private void finish(Job job, boolean saved) {
+		job.saved = saved;
+		job.bitmap = null;
+		job.previous = null;
+		job.sequenceWriter = null;
+		slots.release();
+		job.done.countDown();
+	}
+
+	/**
+	 * 编码并保存一张截图,记录压缩和写入的耗时,不包括等待同一序列中上一帧的时间
+	 * Encodes and writes the bitmap of a job. The recorded latency covers compressing and writing
+	 * only, time spent waiting for the previous frame of the same sequence is left out.
+	 *
+	 * @param job the job to encode
+	 * @param buffer the buffer to encode into
+	 */
+
+	private void encode(Job job, ByteArrayOutputStream buffer) {
+		final long startTime = SystemClock.uptimeMillis();
+		Bitmap b = job.bitmap;
+		boolean saved;
+		long waitTime = 0;
+
+		if(job.sequenceWriter instanceof ScreenshotBitmapSequenceWriter) {
+			// 序列文件的帧必须按顺序写入,等待上一帧写入完成
+			if(job.previous != null) {
+				waitTime = awaitPrevious(job);
+			}
+			saved = writeSequenceFrame((ScreenshotBitmapSequenceWriter) job.sequenceWriter, b);
+			bitmapPool.release(b);
+			job.bitmap = null;
+		}
+		else {
+			buffer.reset();
+			boolean compressed = compress(b, job.quality, buffer);
+			// 归还到缓存池，供下一次截图复用
+			bitmapPool.release(b);
+			job.bitmap = null;
+			// 等待同一序列中的上一张截图写入完成
+			if(job.previous != null) {
+				waitTime = awaitPrevious(job);
+			}
+			if(job.sequenceWriter != null) {
+				saved = compressed && writeSequenceFrame((ScreenshotEncodedSequenceWriter) job.sequenceWriter, buffer);
+			}
+			else {
+				saved = compressed && saveFile(job.file, buffer);
+			}
+		}
+		final long encodeTime = SystemClock.uptimeMillis() - startTime - waitTime;
+
+		synchronized (this) {
+			encodedCount++;
+			totalEncodeTime += encodeTime;
+		}
+		Log.d(LOG_TAG, "saved " + job.file.getName() + " in " + encodeTime + " ms, queue depth " + queue.size());
+		finish(job, saved);
+	}
+
+	/**
+	 * 等待同一序列中的上一张截图写入完成
+	 * Waits until the previous job of the same sequence is done.
+	 *
+	 * @param job the job whose previous job to wait for
+	 * @return the time spent waiting in milliseconds
+	 */
+
+	private long awaitPrevious(Job job) {
+		final long startTime = SystemClock.uptimeMillis();
+		job.previous.awaitDone();
+		return SystemClock.uptimeMillis() - startTime;
+	}
+
+	/**
+	 * 按照配置的图片类型压缩图片
+	 * Compresses a bitmap using the configured file type.
+	 *
+	 * @param b the bitmap to compress
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality).
+	 * @param buffer the buffer to compress into
+	 * @return true if the bitmap was compressed
+	 */
+
+	private boolean compress(Bitmap b, int quality, ByteArrayOutputStream buffer) {
+		boolean compressed;
+
+		if(config.screenshotFileType == ScreenshotFileType.JPEG){
+			compressed = b.compress(Bitmap.CompressFormat.JPEG, quality, buffer);
+		}
+		else{
+			compressed = b.compress(Bitmap.CompressFormat.PNG, quality, buffer);
+		}
+		if (compressed == false){
+			Log.d(LOG_TAG, "Compress/Write failed");
+		}
+		return compressed;
+	}
+
+	/**
+	 * 把一帧原始图片写入序列文件
+	 * Writes a captured frame with a {@code ScreenshotBitmapSequenceWriter}.
+	 *
+	 * @param sequenceWriter the writer of the sequence
+	 * @param b the frame to write
+	 * @return true if the frame was written
+	 */
+
+	private boolean writeSequenceFrame(ScreenshotBitmapSequenceWriter sequenceWriter, Bitmap b) {
+		try {
+			sequenceWriter.writeFrame(b);
+			return true;
+		} catch (IOException e) {
+			logWriteFailure(e);
+			return false;
+		}
+	}
+
+	/**
+	 * 把一帧压缩后的图片写入序列文件
+	 * Writes a compressed frame with a {@code ScreenshotEncodedSequenceWriter}.
+	 *
+	 * @param sequenceWriter the writer of the sequence
+	 * @param encodedFrame the compressed frame
+	 * @return true if the frame was written
+	 */
+
+	private boolean writeSequenceFrame(ScreenshotEncodedSequenceWriter sequenceWriter, ByteArrayOutputStream encodedFrame) {
+		try {
+			sequenceWriter.writeFrame(encodedFrame);
+			return true;
+		} catch (IOException e) {
+			logWriteFailure(e);
+			return false;
+		}
+	}
+
+	/**
+	 * 记录写入序列文件失败
+	 * Logs a failure to write a frame of a sequence.
+	 */
+
+	private void logWriteFailure(IOException e) {
+		Log.d(LOG_TAG, "Can't save the screenshot! Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.");
+		e.printStackTrace();
+	}
+
+	/**
+	 * 按照传入文件名，构造完整文件名
+	 * Returns a proper filename depending on if name is given or not.
+	 *
+	 * @param name the given name
+	 * @return a proper filename depedning on if a name is given or not
+	 *
+	 */
+
+	private String getFileName(final String name){
+		// 构造日期格式
+		SimpleDateFormat sdf = new SimpleDateFormat("ddMMyy-hhmmss");
+		String fileName = null;
+		// 如果未传入名字，那么默认构造一个
+		if(name == null){
+			// 按照配置构造图片类型jpg png
+			if(config.screenshotFileType == ScreenshotFileType.JPEG){
+				fileName = sdf.format( new Date()).toString()+ ".jpg";
+			}
+			else{
+				fileName = sdf.format( new Date()).toString()+ ".png";
+			}
+		}
+		// 如已传入文件名字，那么拼接文件类型后缀
+		else {
+			// 按照配置构造图片类型jpg png
+			if(config.screenshotFileType == ScreenshotFileType.JPEG){
+				fileName = name + ".jpg";
+			}
+			else {
+				fileName = name + ".png";
+			}
+		}
+		return fileName;
+	}
+
+	/**
+	 * 保存文件
+	 * Saves a file.
+	 *
+	 * @param fileToSave the file to save
+	 * @param buffer the encoded image
+	 * @return true if the file was saved
+	 *
+	 */
+
+	private boolean saveFile(File fileToSave, ByteArrayOutputStream buffer){
+		// 写文件对象
+		FileOutputStream fos = null;
+		// 创建目录
+		fileToSave.getParentFile().mkdir();
+		try {
+			// 获取文件流写对象
+			fos = new FileOutputStream(fileToSave);
+			buffer.writeTo(fos);
+			// 关闭写文件流
+			fos.flush();
+			fos.close();
+			return true;
+		} catch (Exception e) {
+			// 日常记录logcat日志，并打印异常堆栈
+			Log.d(LOG_TAG, "Can't save the screenshot! Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.");
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * 编码线程,从队列中取出截图进行编码保存
+	 * Takes jobs from the queue and encodes them.
+	 */
+
+	private class Worker implements Runnable {
+		// 编码缓冲区,每个线程复用
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		public void run() {
+			while(true) {
+				Job job;
+				try {
+					job = queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					encode(job, buffer);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					finish(job, false);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 一张截图的编码任务,可作为Future使用,get()返回保存的文件,保存失败返回null
+	 * A screenshot that has a reserved slot in the encoder. As a {@code Future} it returns the
+	 * saved file, or {@code null} if the screenshot could not be saved.
+	 */
+
+	static class Job implements Future<File> {
+		// 保存的文件
+		final File file;
+		// 图片质量0-100
+		final int quality;
+		// 截图完成计数器
+		final CountDownLatch captured = new CountDownLatch(1);
+		// 编码完成计数器
+		final CountDownLatch done = new CountDownLatch(1);
+		// 需要先写入的上一张截图
+		volatile Job previous;
+		// 序列文件写入工具,为null则保存为单独的文件
+		volatile ScreenshotSequenceWriter sequenceWriter;
+		// 截取的图片
+		volatile Bitmap bitmap;
+		// 是否保存成功
+		volatile boolean saved = false;
+
+		Job(File file, int quality, Job previous) {
+			this.file = file;
+			this.quality = quality;
+			this.previous = previous;
+		}
+
+		/**
+		 * 构造一个已结束的任务,用于被丢弃的截图
+		 * Returns a job that is already completed without a saved file.
+		 *
+		 * @return a completed job
+		 */
+
+		static Job completed() {
+			Job job = new Job(null, 0, null);
+			job.captured.countDown();
+			job.done.countDown();
+			return job;
+		}
+
+		/**
+		 * 等待截图完成,返回是否在超时前完成
+		 * Waits for the pixels to be captured.
+		 *
+		 * @param timeout the maximum time to wait in milliseconds
+		 * @return true if the screenshot was captured before the timeout
+		 */
+
+		boolean awaitCapture(long timeout) {
+			try {
+				return captured.await(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * 等待编码完成,返回是否在超时前完成
+		 * Waits for the job to be encoded and written.
+		 *
+		 * @param timeout the maximum time to wait in milliseconds
+		 * @return true if the job completed before the timeout
+		 */
+
+		boolean await(long timeout) {
+			try {
+				return done.await(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * 等待编码完成,不设置超时
+		 * Waits for the job to be encoded and written.
+		 */
+
+		void awaitDone() {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		public boolean isCancelled() {
+			return false;
+		}
+
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		public File get() throws InterruptedException, ExecutionException {
+			done.await();
+			return saved ? file : null;
+		}
+
+		public File get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if(!done.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+			return saved ? file : null;
+		}
+	}
+}
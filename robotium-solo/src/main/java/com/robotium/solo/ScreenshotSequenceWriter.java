@@ -0,0 +1,29 @@
+package com.robotium.solo;
+
+import java.io.File;
+
+/**
+ * 连续截图写入接口,把一个序列的所有帧写入同一个文件
+ * Writes all frames of a screenshot sequence into a single file.
+ * Frames are handed over in sequence order by the {@code ScreenshotEncoder}, as captured bitmaps to a
+ * {@link ScreenshotBitmapSequenceWriter} or as compressed images to a {@link ScreenshotEncodedSequenceWriter}.
+ */
+
+interface ScreenshotSequenceWriter {
+
+	/**
+	 * 获取写入的文件
+	 * Returns the file the sequence is written to.
+	 *
+	 * @return the file the sequence is written to
+	 */
+
+	File getFile();
+
+	/**
+	 * 写入索引并关闭文件
+	 * Writes the frame index and closes the file.
+	 */
+
+	void close();
+}
@@ -1,27 +1,34 @@
 package com.robotium.solo;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import com.robotium.solo.Solo.Config;
 import com.robotium.solo.Solo.Config.ScreenshotFileType;
+import com.robotium.solo.Solo.Config.ScreenshotSequenceOutput;
 import android.app.Activity;
 import android.app.Instrumentation;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Picture;
+import android.graphics.Rect;
 import android.opengl.GLSurfaceView;
 import android.opengl.GLSurfaceView.Renderer;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Message;
 import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.webkit.WebView;
 
 /**
@@ -34,8 +41,16 @@ import android.webkit.WebView;
  */
 
 class ScreenshotTaker {
-	private static final long TIMEOUT_SCREENSHOT_MUTEX = TimeUnit.SECONDS.toMillis(2);
-	private final Object screenshotMutex = new Object();
+	private static final long TIMEOUT_SCREENSHOT_SAVE = TimeUnit.SECONDS.toMillis(2);
+	// compareScreenshot(String)使用的默认容差,忽略抗锯齿和颜色抖动造成的细微差异
+	static final int DEFAULT_COMPARE_TOLERANCE = 8;
+	// 判断画面稳定时缩小画面的最长边
+	private static final int STABLE_FRAME_SIZE = 128;
+	// 感知哈希的网格大小
+	private static final int STABLE_HASH_GRID = 16;
+	// 判断画面稳定时的采样间隔范围
+	private static final int STABLE_FRAME_MIN_INTERVAL = 16;
+	private static final int STABLE_FRAME_MAX_INTERVAL = 100;
 	// 配置文件，配置Robotium的各种属性
 	private final Config config;
 	private final Instrumentation instrumentation;
@@ -44,14 +59,25 @@ class ScreenshotTaker {
 	private final String LOG_TAG = "Robotium";
 	// 连续截图线程
 	private ScreenshotSequenceThread screenshotSequenceThread = null;
-	// 图片存储处理线程
-	private HandlerThread screenShotSaverThread = null;
-	// 图片保存工具类
-	private ScreenShotSaver screenShotSaver = null;
+	// 图片编码保存工具类
+	private final ScreenshotEncoder screenshotEncoder;
+	// 上一张异步截图,保证异步截图按顺序写入
+	private ScreenshotEncoder.Job lastAsyncJob = null;
 	// view查找工具类
 	private final ViewFetcher viewFetcher;
 	// 延时等待工具类
 	private final Sleeper sleeper;
+	// 截图Bitmap缓存池，连续截图时复用Bitmap
+	private final BitmapPool bitmapPool;
+	// 截图比较工具类
+	private final ScreenshotComparator screenshotComparator = new ScreenshotComparator();
+	// 判断画面稳定时使用的缩小画面
+	private Bitmap stableFrame;
+	private int[] stableFramePixels;
+	// 每个根View中的GL view查找结果,弱引用避免内存泄漏
+	private final Map<View, GLViewDiscovery> glViewDiscoveries = new WeakHashMap<View, GLViewDiscovery>();
+	// 每个GL view的Render替换状态,弱引用避免内存泄漏
+	private final Map<GLSurfaceView, GLViewState> glViewStates = new WeakHashMap<GLSurfaceView, GLViewState>();
 
 
 	/**
@@ -70,6 +96,8 @@ class ScreenshotTaker {
 		this.activityUtils = activityUtils;
 		this.viewFetcher = viewFetcher;
 		this.sleeper = sleeper;
+		this.bitmapPool = new BitmapPool(Math.max(1, config.screenshotQueueCapacity));
+		this.screenshotEncoder = new ScreenshotEncoder(config, bitmapPool);
 	}
 
 	/**
@@ -89,23 +117,265 @@ class ScreenshotTaker {
 		// 无法获取DecorView,直接退出
 		if(decorView == null) 
 			return;
+		takeScreenshot(decorView, null, name, quality);
+	}
+
+	/**
+	 * 只截取指定View及其子View,图片大小与View大小一致
+	 * Takes a screenshot of the given view and its children only and saves it in the {@link Config} objects save path.  
+	 * The image has the size of the view, the rest of the screen is not drawn.
+	 * 
+	 * @param view the view to take a screenshot of
+	 * @param name the name to give the screenshot image
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality).
+	 */
+	public void takeScreenshot(final View view, final String name, final int quality) {
+		if(view == null)
+			return;
+		// 按配置分块截取WebView的网页内容
+		if(view instanceof WebView && config.webViewScreenshotMaxHeight > 0) {
+			takeWebViewScreenshot((WebView) view, name, quality);
+			return;
+		}
+		// 只替换该View中的GL Render
+		wrapAllGLViews(view);
+		takeScreenshot(view, null, name, quality);
+	}
+
+	/**
+	 * 分块截取WebView的网页内容,每一块与WebView等高,最多截取到Config.webViewScreenshotMaxHeight,
+	 * 同一时间内存中最多只有编码队列容量个分块
+	 * Takes screenshots of the page content of a WebView down to {@code Config.webViewScreenshotMaxHeight}.
+	 * The page is drawn tile by tile into bitmaps of the WebView's height, each saved as name_0, name_1 and so on, 
+	 * so no more tiles than the encoding queue capacity are held in memory at a time.
+	 * 
+	 * @param webView the WebView to take screenshots of
+	 * @param name the name prefix to give the screenshot images
+	 * @param quality the compression rate
+	 */
+	private void takeWebViewScreenshot(final WebView webView, final String name, final int quality) {
+		// 在UI线程中记录网页内容,只记录绘制命令,不分配整页大小的Bitmap
+		final Picture[] picture = new Picture[1];
+		final Runnable capture = new Runnable() {
+			public void run() {
+				picture[0] = webView.capturePicture();
+			}
+		};
+		Activity activity = activityUtils.getCurrentActivity(false);
+		if(activity != null) {
+			final CountDownLatch latch = new CountDownLatch(1);
+			activity.runOnUiThread(new Runnable() {
+				public void run() {
+					capture.run();
+					latch.countDown();
+				}
+			});
+			try {
+				latch.await(TIMEOUT_SCREENSHOT_SAVE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		else
+			instrumentation.runOnMainSync(capture);
+		if(picture[0] == null)
+			return;
+
+		initScreenShotSaver();
+		final int width = picture[0].getWidth();
+		final int tileHeight = webView.getHeight();
+		final int height = Math.min(picture[0].getHeight(), config.webViewScreenshotMaxHeight);
+		if(width <= 0 || tileHeight <= 0)
+			return;
+		// 在当前线程中逐块绘制,分块按顺序写入
+		final String prefix = name != null ? name : "WebView";
+		ScreenshotEncoder.Job job = null;
+		for(int top = 0, tile = 0; top < height; top += tileHeight, tile++) {
+			ScreenshotEncoder.Job tileJob = screenshotEncoder.reserve(prefix + "_" + tile, quality, job);
+			if(tileJob == null)
+				continue;
+			job = tileJob;
+			Bitmap b = bitmapPool.obtain(width, Math.min(tileHeight, height - top), Bitmap.Config.ARGB_8888);
+			Canvas c = new Canvas(b);
+			c.translate(0, -top);
+			picture[0].draw(c);
+			screenshotEncoder.submit(job, b);
+		}
+		// 等待最后一块写入完成
+		if(job != null)
+			job.await(TIMEOUT_SCREENSHOT_SAVE);
+	}
+
+	/**
+	 * 只截取屏幕上的指定区域,图片大小与区域大小一致
+	 * Takes a screenshot of a region of the screen and saves it in the {@link Config} objects save path.  
+	 * Only the views intersecting the region are drawn.
+	 * 
+	 * @param region the region to take a screenshot of, in screen coordinates
+	 * @param name the name to give the screenshot image
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality).
+	 */
+	public void takeScreenshot(final Rect region, final String name, final int quality) {
+		if(region == null || region.isEmpty())
+			return;
+		// 获取DecorView
+		View decorView = getScreenshotView();
+		// 无法获取DecorView,直接退出
+		if(decorView == null) 
+			return;
+		takeScreenshot(decorView, new Rect(region), name, quality);
+	}
+
+	/**
+	 * 截图并等待图片保存完成
+	 * Takes a screenshot of a view, or of a region of it, and waits until it is saved.
+	 * 
+	 * @param view the view to draw
+	 * @param region the region to capture in screen coordinates, or {@code null} to capture the whole view
+	 * @param name the name to give the screenshot image
+	 * @param quality the compression rate
+	 */
+	private void takeScreenshot(final View view, final Rect region, final String name, final int quality) {
 		// 初始化图片存储需要的一些事情
 		initScreenShotSaver();
+		// 申请编码队列位置,队列已满且设置为丢弃时直接退出
+		ScreenshotEncoder.Job job = screenshotEncoder.reserve(name, quality, null);
+		if(job == null)
+			return;
 		// 构造截图线程
-		ScreenshotRunnable runnable = new ScreenshotRunnable(decorView, name, quality);
+		ScreenshotRunnable runnable = new ScreenshotRunnable(view, region, job);
 		// 执行截图线程
-		synchronized (screenshotMutex) {
-			Activity activity = activityUtils.getCurrentActivity(false);
-			if(activity != null)
-				activity.runOnUiThread(runnable);
-			else
-				instrumentation.runOnMainSync(runnable);
+		Activity activity = activityUtils.getCurrentActivity(false);
+		if(activity != null)
+			activity.runOnUiThread(runnable);
+		else
+			instrumentation.runOnMainSync(runnable);
+		// 等待图片保存完成
+		job.await(TIMEOUT_SCREENSHOT_SAVE);
+	}
 
-			try {
-				screenshotMutex.wait(TIMEOUT_SCREENSHOT_MUTEX);
-			} catch (InterruptedException ignored) {
+	/**
+	 * 异步截图,截图完成后立即返回,不等待图片保存
+	 * Takes a screenshot and returns as soon as the pixels are captured. Encoding and saving 
+	 * continue in the background. Screenshots taken with this method are saved in the order they were taken.
+	 * 
+	 * @param name the name to give the screenshot image
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality).
+	 * @return a {@code Future} returning the saved file, or {@code null} if the screenshot could not be saved
+	 */
+	public Future<File> takeScreenshotAsync(final String name, final int quality) {
+		// 获取DecorView
+		View decorView = getScreenshotView();
+		// 无法获取DecorView,直接返回
+		if(decorView == null) 
+			return ScreenshotEncoder.Job.completed();
+		// 初始化图片存储需要的一些事情
+		initScreenShotSaver();
+		ScreenshotEncoder.Job job;
+		// 申请编码队列位置,并与上一张异步截图关联
+		synchronized (this) {
+			job = screenshotEncoder.reserve(name, quality, lastAsyncJob);
+			if(job == null)
+				return ScreenshotEncoder.Job.completed();
+			lastAsyncJob = job;
+		}
+		// 构造截图线程
+		ScreenshotRunnable runnable = new ScreenshotRunnable(decorView, null, job);
+		// 执行截图线程
+		Activity activity = activityUtils.getCurrentActivity(false);
+		if(activity != null)
+			activity.runOnUiThread(runnable);
+		else
+			instrumentation.runOnMainSync(runnable);
+		// 只等待截图完成
+		job.awaitCapture(TIMEOUT_SCREENSHOT_SAVE);
+		return job;
+	}
+
+	/**
+	 * 等待所有截图保存完成
+	 * Waits until all screenshots taken so far have been saved.
+	 * 
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return true if all screenshots were saved before the timeout
+	 */
+	public boolean flushScreenshots(long timeout) {
+		return screenshotEncoder.flush(timeout);
+	}
+
+	/**
+	 * 获取等待编码的截图数量
+	 * Returns the number of screenshots waiting to be encoded.
+	 *
+	 * @return the number of screenshots waiting to be encoded
+	 */
+
+	public int getScreenshotQueueDepth() {
+		return screenshotEncoder.getQueueDepth();
+	}
+
+	/**
+	 * 获取截图平均编码耗时,单位ms,不包括等待上一帧的时间
+	 * Returns the average time in milliseconds spent encoding and writing a screenshot, excluding
+	 * the time a sequence frame waits for the previous frame.
+	 *
+	 * @return the average encode latency in milliseconds
+	 */
+
+	public long getAverageScreenshotEncodeLatency() {
+		return screenshotEncoder.getAverageEncodeLatency();
+	}
+
+	/**
+	 * 等待屏幕内容稳定,即连续截取的缩小画面的感知哈希在quietPeriod时间内都没有变化,不保存任何文件
+	 * Waits until the screen stops changing. Downscaled frames are captured and a perceptual hash of 
+	 * each frame is compared with the previous one. No files are written.
+	 *
+	 * @param quietPeriod the time in milliseconds the screen must stay unchanged
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return true if the screen was unchanged for {@code quietPeriod} before the timeout
+	 */
+
+	public boolean waitForScreenStable(final long quietPeriod, final long timeout) {
+		final long endTime = SystemClock.uptimeMillis() + timeout;
+		// 采样间隔
+		final int interval = (int) Math.max(STABLE_FRAME_MIN_INTERVAL, Math.min(STABLE_FRAME_MAX_INTERVAL, quietPeriod / 4));
+		long[] previousHash = null;
+		long stableSince = 0;
+
+		try {
+			while(SystemClock.uptimeMillis() <= endTime) {
+				long[] hash = getScreenHash();
+				long now = SystemClock.uptimeMillis();
+				// 画面变化时重新计时
+				if(hash == null || previousHash == null || !Arrays.equals(hash, previousHash)) {
+					previousHash = hash;
+					stableSince = now;
+				}
+				else if(now - stableSince >= quietPeriod) {
+					return true;
+				}
+				sleeper.sleep(interval);
 			}
+			return false;
+		}
+		finally {
+			// 缩小的画面只在等待期间使用
+			releaseStableFrame();
+		}
+	}
+
+	/**
+	 * 回收等待屏幕稳定时使用的缩小画面
+	 * Recycles the downscaled frame used while waiting for the screen to become stable.
+	 */
+
+	private void releaseStableFrame() {
+		if(stableFrame != null) {
+			stableFrame.recycle();
 		}
+		stableFrame = null;
+		stableFramePixels = null;
 	}
 
 	/**
@@ -165,6 +435,8 @@ class ScreenshotTaker {
 			// 释放线程对象
 			screenshotSequenceThread = null;
 		}
+		// 释放缓存池中空闲的Bitmap
+		bitmapPool.clear();
 	}
 
 	/**
@@ -172,6 +444,23 @@ class ScreenshotTaker {
 	 * Gets the proper view to use for a screenshot.  
 	 */
 	private View getScreenshotView() {
+		View decorView = getDecorView();
+		if(decorView == null) {
+			return null;
+		}
+		// 用Rotium的Render替换原生的Render
+		wrapAllGLViews(decorView);
+
+		return decorView;
+	}
+
+	/**
+	 * 获取当前的界面显示view,不替换GL view的Render
+	 * Gets the most recent decor view without wrapping its OpenGL ES renderers.
+	 *
+	 * @return the decor view, or {@code null} if none was found before the timeout
+	 */
+	private View getDecorView() {
 		// 获取当前的显示界面view
 		View decorView = viewFetcher.getRecentDecorView(viewFetcher.getWindowDecorViews());
 		// 设置超时时间
@@ -188,89 +477,143 @@ class ScreenshotTaker {
 			// 重试获取当前的decorView
 			decorView = viewFetcher.getRecentDecorView(viewFetcher.getWindowDecorViews());
 		}
-		// 用Rotium的Render替换原生的Render
-		wrapAllGLViews(decorView);
-
 		return decorView;
 	}
 
 	/**
-	 * 修改 View的Render,用Robotium自定义的替换
-	 * Extract and wrap the all OpenGL ES Renderer.
+	 * 修改 View的Render,用Robotium自定义的替换.
+	 * GL view的查找结果和替换状态会被缓存,最多等待截图超时时间
+	 * Extract and wrap the all OpenGL ES Renderer. The GL views found and their wrappers are cached, 
+	 * and the wait for the GL threads to render is bounded by the screenshot timeout.
 	 */
 	private void wrapAllGLViews(View decorView) {
-		// 获取当前decorView中的GLSurfaceView类型的view
-		ArrayList<GLSurfaceView> currentViews = viewFetcher.getCurrentViews(GLSurfaceView.class, true, decorView);
+		// 获取当前decorView中可见的GLSurfaceView类型的view
+		ArrayList<GLSurfaceView> currentViews = getGLViews(decorView);
+		// 没有GL view时不需要等待
+		if(currentViews.isEmpty())
+			return;
 		// 锁住当前线程，避免并发引发问题
 		final CountDownLatch latch = new CountDownLatch(currentViews.size());
-		// 编译所有view进行替换render
+		// 遍历所有view进行替换render
 		for (GLSurfaceView glView : currentViews) {
+			GLRenderWrapper wrapper = getRenderWrapper(glView, latch);
+			// 如果无法获取，则跳过当前，处理下一个
+			if (wrapper == null) {
+				//计数器减一
+				latch.countDown();
+				continue;
+			}
+			// 按需渲染的view需要主动请求绘制一帧
+			glView.requestRender();
+		}
+		// 等待操作完成,GL线程暂停时不会无限等待
+		try {
+			if(!latch.await(TIMEOUT_SCREENSHOT_SAVE, TimeUnit.MILLISECONDS)) {
+				Log.d(LOG_TAG, "Timed out waiting for OpenGL views to render!");
+				// 清除缓存的替换状态,下次截图时重新检查
+				synchronized (glViewStates) {
+					for (GLSurfaceView glView : currentViews) {
+						glViewStates.remove(glView);
+					}
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 获取View中可见的GLSurfaceView,查找结果缓存到下一次布局变化
+	 * Returns the sufficiently visible GLSurfaceViews under the given view. The views found are 
+	 * cached until the next global layout of the view hierarchy.
+	 * 
+	 * @param root the view to search
+	 * @return the GLSurfaceViews to wrap
+	 */
+	private ArrayList<GLSurfaceView> getGLViews(final View root) {
+		GLViewDiscovery discovery;
+		boolean created = false;
+		synchronized (glViewDiscoveries) {
+			discovery = glViewDiscoveries.get(root);
+			if(discovery == null) {
+				discovery = new GLViewDiscovery();
+				glViewDiscoveries.put(root, discovery);
+				created = true;
+			}
+		}
+		// ViewTreeObserver不是线程安全的,在UI线程中注册监听.不能持有锁,UI线程移除监听时也需要该锁
+		if(created) {
+			final GLViewDiscovery newDiscovery = discovery;
+			instrumentation.runOnMainSync(new Runnable() {
+				public void run() {
+					newDiscovery.register(root);
+				}
+			});
+		}
+		return discovery.getVisibleViews(root);
+	}
+
+	/**
+	 * 获取GLSurfaceView的Robotium Render,并设置为截图模式.
+	 * 已替换过的view使用缓存,只检查GL线程是否变化
+	 * Returns the wrapper of the renderer of a GLSurfaceView, ready to take a screenshot. The renderer 
+	 * is wrapped the first time, afterwards the cached wrapper is used as long as the GL thread is the same.
+	 * 
+	 * @param glView the GLSurfaceView
+	 * @param latch the latch to count down when the screenshot is taken
+	 * @return the wrapper, or {@code null} if the renderer could not be found
+	 */
+	private GLRenderWrapper getRenderWrapper(GLSurfaceView glView, CountDownLatch latch) {
+		synchronized (glViewStates) {
+			GLViewState state = glViewStates.get(glView);
+			if(state != null && state.isInstalled(glView)) {
+				GLRenderWrapper wrapper = state.wrapper.get();
+				if(wrapper != null) {
+					// 先设置计数器再设置截图模式
+					wrapper.setLatch(latch);
+					wrapper.setTakeScreenshot();
+					return wrapper;
+				}
+			}
 			// 反射获取属性
 			Object renderContainer = new Reflect(glView).field("mGLThread")
 					.type(GLSurfaceView.class).out(Object.class);
-			// 获取原始的renderer		
-			Renderer renderer = new Reflect(renderContainer).field("mRenderer").out(Renderer.class);
+			// 获取原始的renderer
+			Renderer renderer = null;
+			if (renderContainer != null) {
+				renderer = new Reflect(renderContainer).field("mRenderer").out(Renderer.class);
+			}
 			// 如果获取失败，则尝试直接获取glView的属性
 			if (renderer == null) {
 				renderer = new Reflect(glView).field("mRenderer").out(Renderer.class);
 				renderContainer = glView;
-			}  
-			// 如果无法获取，则跳过当前，处理下一个
+			}
+			// 如果无法获取，则返回null
 			if (renderer == null) {
-				//计数器减一
-				latch.countDown();
-				// 跳转到下个循环
-				continue;
+				return null;
 			}
+			GLRenderWrapper wrapper;
 			// 按照render类型进行操作,如果已经是Robotium修改过的render,那么重置下相关属性即可
 			if (renderer instanceof GLRenderWrapper) {
-				// 类型转成Robotium的
-				GLRenderWrapper wrapper = (GLRenderWrapper) renderer;
-				// 设置截图模式
-				wrapper.setTakeScreenshot();
-				// 设置并发控制计数器
+				wrapper = (GLRenderWrapper) renderer;
 				wrapper.setLatch(latch);
-				// 如果还不是robotium修改过的，那么就重新构造一个，并且替换原有属性
+				wrapper.setTakeScreenshot();
+			// 如果还不是robotium修改过的，那么就重新构造一个，并且替换原有属性
 			} else {
-				// 构造一个robotium修改过的Render
-				GLRenderWrapper wrapper = new GLRenderWrapper(glView, renderer, latch);
+				wrapper = new GLRenderWrapper(glView, renderer, latch);
 				// 通过反射修改属性为定制的render
 				new Reflect(renderContainer).field("mRenderer").in(wrapper);
 			}
-		}
-		// 等待操作完成
-		try {
-			latch.await();
-		} catch (InterruptedException ex) {
-			ex.printStackTrace();
+			glViewStates.put(glView, new GLViewState(renderContainer, wrapper));
+			return wrapper;
 		}
 	}
 
 
 	/**
-	 * 获取WebView的图形内容
-	 * Returns a bitmap of a given WebView.
-	 *  
-	 * @param webView the webView to save a bitmap from
-	 * @return a bitmap of the given web view
-	 * 
-	 */
-
-	private Bitmap getBitmapOfWebView(final WebView webView){
-		// 获取WebView图形内容
-		Picture picture = webView.capturePicture();
-		// 构造Bitmap对象
-		Bitmap b = Bitmap.createBitmap( picture.getWidth(), picture.getHeight(), Bitmap.Config.ARGB_8888);
-		// 构造Canvas
-		Canvas c = new Canvas(b);
-		// 把图片绘制到canvas.就是把内容搞到Bitmap中，即b中
-		picture.draw(c);
-		return b;
-	}
-
-	/**
-	 * 获取View的BitMap格式文件内容
-	 * Returns a bitmap of a given View.
+	 * 获取View的BitMap格式文件内容,直接绘制到缓存池中的Bitmap,不再构建并复制绘图缓存
+	 * Returns a bitmap of a given View. The view is drawn into a pooled bitmap 
+	 * instead of building and copying its drawing cache.
 	 * 
 	 * @param view the view to save a bitmap from
 	 * @return a bitmap of the given view
@@ -278,65 +621,229 @@ class ScreenshotTaker {
 	 */
 
 	private Bitmap getBitmapOfView(final View view){
-		// 初始化缓冲，清空原有内容
-		view.destroyDrawingCache();
-		view.buildDrawingCache(false);
-		// 获取Bitmap内容
-		Bitmap orig = view.getDrawingCache();
-		// 如果获取内容为null,直接返回null
-		Bitmap.Config config = null;
-
-		if(orig == null) {
+		final int width = view.getWidth();
+		final int height = view.getHeight();
+		// 尺寸异常,直接返回null
+		if(width <= 0 || height <= 0) {
 			return null;
 		}
-		// 获取配置信息
-		config = orig.getConfig();
-		// 如果图片类型无法获取，则默认使用ARGB_8888
-		if(config == null) {
-			config = Bitmap.Config.ARGB_8888;
-		}
-		// 构造BitMap内容
-		Bitmap b = orig.copy(config, false);
-		orig.recycle();
-		// 清空绘图缓存
-		view.destroyDrawingCache();
+		// 从缓存池获取Bitmap
+		Bitmap b = bitmapPool.obtain(width, height, Bitmap.Config.ARGB_8888);
+		// 把View绘制到Bitmap中
+		Canvas c = new Canvas(b);
+		c.translate(-view.getScrollX(), -view.getScrollY());
+		view.draw(c);
 		return b; 
 	}
 
 	/**
-	 * 按照传入文件名，构造完整文件名
-	 * Returns a proper filename depending on if name is given or not.
-	 * 
-	 * @param name the given name
-	 * @return a proper filename depedning on if a name is given or not
-	 * 
+	 * 截图并与基准图片比较,存在差异时保存差异图片
+	 * Compares the screen with a baseline image in {@code Config.screenshotBaselinePath}. If pixels differ, 
+	 * a diff image named baselineName_diff is saved in the {@link Config} objects save path.
+	 *
+	 * @param baselineName the name of the baseline image, with or without the file extension
+	 * @param tolerance the maximum difference of each color channel for pixels to be considered equal
+	 * @param ignoreRegions the regions of the screen not to compare, in screen coordinates
+	 * @return the result of the comparison, or {@code null} if the screen or the baseline could not be read
 	 */
 
-	private String getFileName(final String name){
-		// 构造日期格式
-		SimpleDateFormat sdf = new SimpleDateFormat("ddMMyy-hhmmss");
-		String fileName = null;
-		// 如果未传入名字，那么默认构造一个
-		if(name == null){
-			// 按照配置构造图片类型jpg png
-			if(config.screenshotFileType == ScreenshotFileType.JPEG){
-				fileName = sdf.format( new Date()).toString()+ ".jpg";
+	public ScreenshotComparison compareScreenshot(final String baselineName, final int tolerance, final Rect[] ignoreRegions) {
+		File baselineFile = getBaselineFile(baselineName);
+		if(!baselineFile.isFile()) {
+			Log.d(LOG_TAG, "Baseline " + baselineFile + " does not exist!");
+			return null;
+		}
+		// JPEG有损压缩,容差为0时几乎每个像素都不同
+		if(tolerance == 0 && !baselineFile.getName().toLowerCase().endsWith(".png")) {
+			Log.d(LOG_TAG, "Baseline " + baselineFile + " is a lossy JPEG, comparing it with tolerance 0 reports most pixels as different. Use a PNG baseline or a tolerance of at least " + DEFAULT_COMPARE_TOLERANCE + ".");
+		}
+		final View decorView = getScreenshotView();
+		if(decorView == null)
+			return null;
+		// 在UI线程中截图
+		final Bitmap[] frame = new Bitmap[1];
+		final int[] location = new int[2];
+		instrumentation.runOnMainSync(new Runnable() {
+			public void run() {
+				frame[0] = getBitmapOfView(decorView);
+				decorView.getLocationOnScreen(location);
 			}
-			else{
-				fileName = sdf.format( new Date()).toString()+ ".png";	
+		});
+		if(frame[0] == null)
+			return null;
+		// 忽略区域转换为截图坐标
+		Rect[] regions = null;
+		if(ignoreRegions != null) {
+			regions = new Rect[ignoreRegions.length];
+			for(int i = 0; i < regions.length; i++) {
+				if(ignoreRegions[i] != null) {
+					regions[i] = new Rect(ignoreRegions[i]);
+					regions[i].offset(-location[0], -location[1]);
+				}
 			}
 		}
-		// 如已传入文件名字，那么拼接文件类型后缀
-		else {
-			// 按照配置构造图片类型jpg png
-			if(config.screenshotFileType == ScreenshotFileType.JPEG){
-				fileName = name + ".jpg";
+		// 差异图片是唯一额外分配的整屏Bitmap
+		Bitmap diff = bitmapPool.obtain(frame[0].getWidth(), frame[0].getHeight(), Bitmap.Config.ARGB_8888);
+		ScreenshotComparison comparison;
+		try {
+			comparison = screenshotComparator.compare(frame[0], baselineFile, tolerance, regions, diff);
+		} catch (IOException e) {
+			Log.d(LOG_TAG, "Can't read the baseline " + baselineFile + "!");
+			e.printStackTrace();
+			bitmapPool.release(diff);
+			return null;
+		} finally {
+			bitmapPool.release(frame[0]);
+		}
+		// 没有差异时不保存差异图片
+		if(!comparison.isSameSize() || comparison.getNumberOfDifferentPixels() == 0) {
+			bitmapPool.release(diff);
+			return comparison;
+		}
+		initScreenShotSaver();
+		ScreenshotEncoder.Job job = screenshotEncoder.reserve(stripExtension(baselineName) + "_diff", 100, null);
+		if(job == null) {
+			bitmapPool.release(diff);
+			return comparison;
+		}
+		screenshotEncoder.submit(job, diff);
+		if(job.await(TIMEOUT_SCREENSHOT_SAVE) && job.saved) {
+			comparison.setDiffFile(job.file);
+		}
+		return comparison;
+	}
+
+	/**
+	 * 获取基准图片文件,未指定后缀时使用无损的PNG
+	 * Returns the baseline file. Names without an extension refer to a lossless PNG baseline.
+	 */
+
+	private File getBaselineFile(String baselineName) {
+		if(!baselineName.equals(stripExtension(baselineName))) {
+			return new File(config.screenshotBaselinePath, baselineName);
+		}
+		return new File(config.screenshotBaselinePath, baselineName + ".png");
+	}
+
+	/**
+	 * 去掉图片文件名的后缀
+	 * Returns the name without a .png, .jpg or .jpeg extension.
+	 */
+
+	private static String stripExtension(String name) {
+		return name.replaceFirst("(?i)\\.(png|jpe?g)$", "");
+	}
+
+	/**
+	 * 截取缩小的当前画面并计算感知哈希,直接绘制decorView,不读取GL view的完整画面
+	 * Captures a downscaled frame of the current screen and returns its perceptual hash. The decor
+	 * view is drawn directly, OpenGL ES views are not wrapped and read back.
+	 *
+	 * @return the hash, or {@code null} if the screen could not be captured
+	 */
+
+	private long[] getScreenHash() {
+		final View decorView = getDecorView();
+		if(decorView == null)
+			return null;
+		final int[] size = new int[2];
+		// 在UI线程中把画面绘制到缩小的Bitmap中
+		instrumentation.runOnMainSync(new Runnable() {
+			public void run() {
+				int width = decorView.getWidth();
+				int height = decorView.getHeight();
+				if(width <= 0 || height <= 0)
+					return;
+				float scale = Math.min(1f, (float) STABLE_FRAME_SIZE / Math.max(width, height));
+				int w = Math.max(1, (int) (width * scale));
+				int h = Math.max(1, (int) (height * scale));
+				if(stableFrame == null || stableFrame.getWidth() != w || stableFrame.getHeight() != h) {
+					if(stableFrame != null)
+						stableFrame.recycle();
+					stableFrame = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+					stableFramePixels = new int[w * h];
+				}
+				else {
+					stableFrame.eraseColor(Color.TRANSPARENT);
+				}
+				Canvas c = new Canvas(stableFrame);
+				c.scale(scale, scale);
+				c.translate(-decorView.getScrollX(), -decorView.getScrollY());
+				decorView.draw(c);
+				stableFrame.getPixels(stableFramePixels, 0, w, 0, 0, w, h);
+				size[0] = w;
+				size[1] = h;
 			}
-			else {
-				fileName = name + ".png";	
+		});
+		if(size[0] == 0)
+			return null;
+		return getPerceptualHash(stableFramePixels, size[0], size[1]);
+	}
+
+	/**
+	 * 计算画面的差异哈希:把画面划分为网格,计算每格的平均亮度,按相邻格子的亮度大小关系生成每一位
+	 * Returns a difference hash of a frame. The frame is divided into a grid, and each bit tells 
+	 * whether a cell is brighter than the next one, so that small rendering noise does not change the hash.
+	 *
+	 * @param pixels the pixels of the frame
+	 * @param width the width of the frame
+	 * @param height the height of the frame
+	 * @return the hash
+	 */
+
+	static long[] getPerceptualHash(int[] pixels, int width, int height) {
+		final int cells = STABLE_HASH_GRID * STABLE_HASH_GRID;
+		long[] luminance = new long[cells];
+		int[] counts = new int[cells];
+		for(int y = 0; y < height; y++) {
+			int row = (y * STABLE_HASH_GRID / height) * STABLE_HASH_GRID;
+			for(int x = 0, i = y * width; x < width; x++, i++) {
+				int pixel = pixels[i];
+				int cell = row + x * STABLE_HASH_GRID / width;
+				luminance[cell] += ((pixel >> 16) & 0xff) * 299 + ((pixel >> 8) & 0xff) * 587 + (pixel & 0xff) * 114;
+				counts[cell]++;
 			}
 		}
-		return fileName;
+		for(int i = 0; i < cells; i++) {
+			if(counts[i] > 0)
+				luminance[i] /= counts[i];
+		}
+		long[] hash = new long[cells / 64];
+		for(int i = 0; i < cells; i++) {
+			// 与下一格比较,最后一格与第一格比较
+			if(luminance[i] > luminance[(i + 1) % cells])
+				hash[i >> 6] |= 1L << (i & 63);
+		}
+		return hash;
+	}
+
+	/**
+	 * 获取View中指定区域的BitMap格式内容,只绘制与区域相交的子View
+	 * Returns a bitmap of a region of a given View. The bitmap has the size of the region 
+	 * and children outside of it are clipped away by the canvas.
+	 * 
+	 * @param view the view to save a bitmap from
+	 * @param region the region in screen coordinates
+	 * @return a bitmap of the region, or {@code null} if the region is outside of the view
+	 * 
+	 */
+
+	private Bitmap getBitmapOfRegion(final View view, final Rect region){
+		// 把屏幕坐标转换为View坐标,并限制在View范围内
+		int[] location = new int[2];
+		view.getLocationOnScreen(location);
+		Rect bounds = new Rect(region);
+		bounds.offset(-location[0], -location[1]);
+		if(!bounds.intersect(0, 0, view.getWidth(), view.getHeight())) {
+			return null;
+		}
+		// 从缓存池获取区域大小的Bitmap
+		Bitmap b = bitmapPool.obtain(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+		// 移动画布,区域外的内容不会绘制到Bitmap中
+		Canvas c = new Canvas(b);
+		c.translate(-bounds.left - view.getScrollX(), -bounds.top - view.getScrollY());
+		view.draw(c);
+		return b;
 	}
 
 	/**
@@ -344,15 +851,8 @@ class ScreenshotTaker {
 	 * This method initializes the aysnc screenshot saving logic
 	 */
 	private void initScreenShotSaver() {
-		// 如果当前存储线程未初始化，则进行初始化
-		if(screenShotSaverThread == null || screenShotSaver == null) {
-			// 初始化一个处理线程
-			screenShotSaverThread = new HandlerThread("ScreenShotSaver");
-			// 开始运行线程
-			screenShotSaverThread.start();
-			// 初始化一个存储类
-			screenShotSaver = new ScreenShotSaver(screenShotSaverThread);
-		}
+		// 启动编码线程,已启动则不做处理
+		screenshotEncoder.start();
 	}
 
 	/** 
@@ -378,6 +878,16 @@ class ScreenshotTaker {
 		private int maxFrames;
 
 		private boolean keepRunning = true;
+		// 上一帧的保存任务,保证序列中的图片按顺序写入
+		private ScreenshotEncoder.Job previousJob = null;
+		// 序列文件写入工具,为null则每一帧保存为单独的文件
+		private ScreenshotSequenceWriter sequenceWriter = null;
+		// 上一帧的哈希值,用于跳过重复的帧
+		private long previousFrameHash;
+		// 每一帧的重复次数
+		private final ArrayList<Integer> repeatCounts = new ArrayList<Integer>();
+		// 计算哈希值的行像素缓存
+		private int[] rowPixels;
 
 		public ScreenshotSequenceThread(String _name, int _quality, int _frameDelay, int _maxFrames) {
 			name = _name;
@@ -387,34 +897,80 @@ class ScreenshotTaker {
 		}
 
 		public void run() {
+			// 按照配置创建序列文件
+			sequenceWriter = createSequenceWriter();
 			// 截图数量未达到指定值，继续截图
 			while(seqno < maxFrames) {
 				// 线程结束或业务已经完成则退出循环
 				if(!keepRunning || Thread.interrupted()) break;
-				// 截图
-				doScreenshot();
-				// 计数器+1
-				seqno++;
+				// 截图,跳过重复的帧时不计数
+				if(doScreenshot())
+					// 计数器+1
+					seqno++;
 				try {
 					// 等待指定的时间
 					Thread.sleep(frameDelay);
 				} catch (InterruptedException e) {
 				}
 			}
+			// 等待最后一帧写入后关闭序列文件
+			if(sequenceWriter != null) {
+				// 清除中断标志,确保可以等待最后一帧写入完成
+				Thread.interrupted();
+				if(previousJob != null) {
+					previousJob.awaitDone();
+				}
+				sequenceWriter.close();
+			}
+			// 保存每一帧的重复次数
+			if(config.screenshotSequenceSkipDuplicates) {
+				writeRepeatCounts();
+			}
 			// 释放线程对象
 			screenshotSequenceThread = null;
 		}
 
-		// 截图
-		public void doScreenshot() {
+		/**
+		 * 按照配置创建序列文件写入工具,保存为单独文件时返回null
+		 * Creates the writer for the configured sequence output, or returns null if 
+		 * every frame is saved as a separate file.
+		 */
+		private ScreenshotSequenceWriter createSequenceWriter() {
+			try {
+				if(config.screenshotSequenceOutput == ScreenshotSequenceOutput.DELTA) {
+					return new ScreenshotDeltaWriter(new File(config.screenshotSavePath, name + ".rsd"));
+				}
+				if(config.screenshotSequenceOutput == ScreenshotSequenceOutput.CONTAINER) {
+					int fileType = config.screenshotFileType == ScreenshotFileType.PNG ? 
+							ScreenshotContainerWriter.FILE_TYPE_PNG : ScreenshotContainerWriter.FILE_TYPE_JPEG;
+					return new ScreenshotContainerWriter(new File(config.screenshotSavePath, name + ".rsc"), fileType);
+				}
+				return null;
+			} catch (IOException e) {
+				Log.d(LOG_TAG, "Can't create the screenshot sequence file, saving separate files instead.");
+				e.printStackTrace();
+				return null;
+			}
+		}
+
+		// 截图,返回是否保存了新的一帧
+		public boolean doScreenshot() {
 			// 获取当前的屏幕DecorView
-			View v = getScreenshotView();
+			final View v = getScreenshotView();
 			// 如果无法获取decorView 终止当前线程
 			if(v == null) keepRunning = false;
 			// 拼接文件名
 			String final_name = name+"_"+seqno;
+			// 跳过重复的帧时先截图计算哈希值,再申请编码队列位置
+			if(config.screenshotSequenceSkipDuplicates) {
+				return doDeduplicatedScreenshot(v, final_name);
+			}
+			// 申请编码队列位置,队列已满且设置为丢弃时跳过该帧
+			ScreenshotEncoder.Job job = screenshotEncoder.reserve(final_name, quality, previousJob, sequenceWriter);
+			if(job == null) return false;
+			previousJob = job;
 			// 初始化截图线程
-			ScreenshotRunnable r = new ScreenshotRunnable(v, final_name, quality);
+			ScreenshotRunnable r = new ScreenshotRunnable(v, null, job);
 			Log.d(LOG_TAG, "taking screenshot "+final_name);
 			// 启动截图线程
 			Activity activity = activityUtils.getCurrentActivity(false);
@@ -424,6 +980,86 @@ class ScreenshotTaker {
 			else {
 				instrumentation.runOnMainSync(r);
 			}
+			return true;
+		}
+
+		/**
+		 * 截图,与上一帧相同时只增加上一帧的重复次数,不编码保存
+		 * Takes a screenshot and saves it only if it differs from the previous frame. 
+		 * Otherwise the repeat count of the previous frame is increased.
+		 *
+		 * @return true if a new frame was saved
+		 */
+		private boolean doDeduplicatedScreenshot(final View v, final String final_name) {
+			if(v == null)
+				return false;
+			final Bitmap[] frame = new Bitmap[1];
+			instrumentation.runOnMainSync(new Runnable() {
+				public void run() {
+					frame[0] = getBitmapOfView(v);
+				}
+			});
+			if(frame[0] == null)
+				return false;
+			long hash = hashFrame(frame[0]);
+			// 与上一帧相同,不保存
+			if(!repeatCounts.isEmpty() && hash == previousFrameHash) {
+				bitmapPool.release(frame[0]);
+				int last = repeatCounts.size() - 1;
+				repeatCounts.set(last, repeatCounts.get(last) + 1);
+				return false;
+			}
+			ScreenshotEncoder.Job job = screenshotEncoder.reserve(final_name, quality, previousJob, sequenceWriter);
+			if(job == null) {
+				bitmapPool.release(frame[0]);
+				return false;
+			}
+			Log.d(LOG_TAG, "taking screenshot "+final_name);
+			previousJob = job;
+			previousFrameHash = hash;
+			repeatCounts.add(1);
+			screenshotEncoder.submit(job, frame[0]);
+			return true;
+		}
+
+		/**
+		 * 逐行计算整帧的哈希值
+		 * Returns a hash of all pixels of a frame, read one row at a time.
+		 */
+		private long hashFrame(Bitmap frame) {
+			int width = frame.getWidth();
+			int height = frame.getHeight();
+			if(rowPixels == null || rowPixels.length != width) {
+				rowPixels = new int[width];
+			}
+			long hash = ((long) width << 32) | height;
+			for(int y = 0; y < height; y++) {
+				frame.getPixels(rowPixels, 0, width, 0, y, width, 1);
+				hash = (hash * 0x100000001b3L) ^ ScreenshotDeltaWriter.hashPixels(rowPixels, width);
+			}
+			return hash;
+		}
+
+		/**
+		 * 把每一帧的重复次数写入name_repeats.txt,每行为帧名和重复次数
+		 * Writes the repeat count of every saved frame to name_repeats.txt, one line per frame 
+		 * with the frame name and the number of times it was captured.
+		 */
+		private void writeRepeatCounts() {
+			File file = new File(config.screenshotSavePath, name + "_repeats.txt");
+			try {
+				Writer writer = new BufferedWriter(new FileWriter(file));
+				try {
+					for(int i = 0; i < repeatCounts.size(); i++) {
+						writer.write(name + "_" + i + " " + repeatCounts.get(i) + "\n");
+					}
+				} finally {
+					writer.close();
+				}
+			} catch (IOException e) {
+				Log.d(LOG_TAG, "Can't save " + file.getName() + "!");
+				e.printStackTrace();
+			}
 		}
 
 		// 停掉当前线程
@@ -435,165 +1071,140 @@ class ScreenshotTaker {
 	}
 
 	/**
-	 * 抓取当前屏幕并发送给对应图片处理器进行相关图片处理和保存
+	 * 抓取当前屏幕并发送给编码器进行相关图片处理和保存
 	 * Here we have a Runnable which is responsible for taking the actual screenshot,
-	 * and then posting the bitmap to a Handler which will save it.
+	 * and then handing the bitmap to the {@code ScreenshotEncoder} which will save it.
 	 *
 	 * This Runnable is run on the UI thread.
 	 */
 	private class ScreenshotRunnable implements Runnable {
 
 		private View view;
-		private String name;
-		private int quality;
+		// 截图区域,为null时截取整个View
+		private Rect region;
+		private ScreenshotEncoder.Job job;
 
-		public ScreenshotRunnable(final View _view, final String _name, final int _quality) {
+		public ScreenshotRunnable(final View _view, final Rect _region, final ScreenshotEncoder.Job _job) {
 			view = _view;
-			name = _name;
-			quality = _quality;
+			region = _region;
+			job = _job;
 		}
 
 		public void run() {
+			Bitmap b = null;
 			// 如果decorView可以获取到，则截图
 			if(view !=null){
-				Bitmap  b;
 				// 按照 View类型进行图片内容获取操作
-				if(view instanceof WebView){
-					b = getBitmapOfWebView((WebView) view);
+				// WebView也只绘制可见区域,不再截取整个网页
+				if(region != null){
+					b = getBitmapOfRegion(view, region);
 				}
 				else{
 					b = getBitmapOfView(view);
 				}
-				// 如果可以获取到图片内容，则保存图片
-				if(b != null) {
-					screenShotSaver.saveBitmap(b, name, quality);
-					b = null;
-					// Return here so that the screenshotMutex is not unlocked,
-					// since this is handled by save bitmap
-					return;
-				}
-				// 无法获取图片内容，打印相关日志
-				else
-					Log.d(LOG_TAG, "NULL BITMAP!!");
-			}
-
-			// Make sure the screenshotMutex is unlocked
-			synchronized (screenshotMutex) {
-				screenshotMutex.notify();
 			}
+			// 交给编码器保存图片,图片为null时直接结束该任务
+			screenshotEncoder.submit(job, b);
 		}
 	}
 
 	/**
-	 * 保存图片，通过异步线程完成
-	 * This class is a Handler which deals with saving the screenshots on a separate thread.
-	 *
-	 * The screenshot logic by necessity has to run on the ui thread.  However, in practice
-	 * it seems that saving a screenshot (with quality 100) takes approx twice as long
-	 * as taking it in the first place. 
-	 *
-	 * Saving the screenshots in a separate thread like this will thus make the screenshot
-	 * process approx 3x faster as far as the main thread is concerned.
-	 *
+	 * 缓存根View中的GL view,布局变化时重新查找.根View离开窗口时移除监听和缓存
+	 * Caches the GLSurfaceViews under a root view. The cache is invalidated by every global layout,
+	 * which is when views can be added, removed or shown. The listeners are added and removed on the
+	 * UI thread, and removed together with the cache entry when the root view is detached.
 	 */
-	private class ScreenShotSaver extends Handler {
-		public ScreenShotSaver(HandlerThread thread) {
-			super(thread.getLooper());
-		}
+	private class GLViewDiscovery implements ViewTreeObserver.OnGlobalLayoutListener, View.OnAttachStateChangeListener {
+		// 布局是否有变化
+		private volatile boolean changed = true;
+		// 找到的GL view,包括不可见的
+		private final ArrayList<WeakReference<GLSurfaceView>> glViews = new ArrayList<WeakReference<GLSurfaceView>>();
 
 		/**
-		 * 保存图片,通过消息推送
-	 	 * bitmap 要保存的图片
-	 	 * name 图片名
-		 * quality 图片质量0-100
-		 * This method posts a Bitmap with meta-data to the Handler queue.
-		 *
-		 * @param bitmap the bitmap to save
-		 * @param name the name of the file
-		 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality).
+		 * 注册监听,在UI线程中调用.根View还没有加入窗口时,加入后再监听布局变化
+		 * Adds the listeners to the root view. Called on the UI thread. If the root view is not attached
+		 * yet, layouts are listened to once it is.
 		 */
-		public void saveBitmap(Bitmap bitmap, String name, int quality) {
-			// 初始化构造一个消息
-			Message message = this.obtainMessage();
-			// 初始化消息属性
-			message.arg1 = quality;
-			message.obj = bitmap;
-			message.getData().putString("name", name);
-			// 发送消息，等待处理器处理
-			this.sendMessage(message);
+		public void register(View root) {
+			root.addOnAttachStateChangeListener(this);
+			if(root.getWindowToken() != null) {
+				root.getViewTreeObserver().addOnGlobalLayoutListener(this);
+			}
 		}
 
-		/**
-		 * 处理收到的消息
-		 * Here we process the Handler queue and save the bitmaps.
-		 *
-		 * @param message A Message containing the bitmap to save, and some metadata.
-		 */
-		public void handleMessage(Message message) {
-			synchronized (screenshotMutex) {
-				String name = message.getData().getString("name");
-				int quality = message.arg1;
-				// 获取图片内容
-				Bitmap b = (Bitmap)message.obj;
-				// 处理图片内容
-				if(b != null) {
-					// 保存图片到指定文件
-					saveFile(name, b, quality);
-					// 释放图片缓存
-					b.recycle();
-				}
-				// 如果图片无内容，则打印日志信息
-				else {
-					Log.d(LOG_TAG, "NULL BITMAP!!");
-				}
+		public void onGlobalLayout() {
+			changed = true;
+		}
+
+		public void onViewAttachedToWindow(View root) {
+			changed = true;
+			root.getViewTreeObserver().addOnGlobalLayoutListener(this);
+		}
 
-				screenshotMutex.notify();
+		@SuppressWarnings("deprecation")
+		public void onViewDetachedFromWindow(View root) {
+			// 离开窗口前ViewTreeObserver仍是窗口的,在这里移除监听
+			root.getViewTreeObserver().removeGlobalOnLayoutListener(this);
+			root.removeOnAttachStateChangeListener(this);
+			synchronized (glViewDiscoveries) {
+				if(glViewDiscoveries.get(root) == this) {
+					glViewDiscoveries.remove(root);
+				}
 			}
 		}
 
-		/**
-		 * 保存文件
-		 * Saves a file.
-		 * 
-		 * @param name the name of the file
-		 * @param b the bitmap to save
-		 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality).
-		 * 
-		 */
-		private void saveFile(String name, Bitmap b, int quality){
-			// 写文件对象
-			FileOutputStream fos = null;
-			// 构造完整文件名
-			String fileName = getFileName(name);
-			// 获取系统设置的目录
-			File directory = new File(config.screenshotSavePath);
-			// 创建目录
-			directory.mkdir();
-			// 获取文件对象
-			File fileToSave = new File(directory,fileName);
-			try {
-				// 获取文件流写对象
-				fos = new FileOutputStream(fileToSave);			
-				if(config.screenshotFileType == ScreenshotFileType.JPEG){
-					// 图片内容按照指定格式压缩，并写入指定文件，如出现异常，打印异常日志
-					if (b.compress(Bitmap.CompressFormat.JPEG, quality, fos) == false){
-						Log.d(LOG_TAG, "Compress/Write failed");
+		public synchronized ArrayList<GLSurfaceView> getVisibleViews(View root) {
+			if(changed) {
+				// 先清除标志,查找过程中发生的布局变化会再次设置
+				changed = false;
+				glViews.clear();
+				for (View view : viewFetcher.getViews(root, false)) {
+					if (view instanceof GLSurfaceView) {
+						glViews.add(new WeakReference<GLSurfaceView>((GLSurfaceView) view));
 					}
 				}
-				else{
-					// 图片内容按照指定格式压缩，并写入指定文件，如出现异常，打印异常日志
-					if (b.compress(Bitmap.CompressFormat.PNG, quality, fos) == false){
-						Log.d(LOG_TAG, "Compress/Write failed");
-					}
+			}
+			ArrayList<GLSurfaceView> visibleViews = new ArrayList<GLSurfaceView>(glViews.size());
+			for (WeakReference<GLSurfaceView> reference : glViews) {
+				GLSurfaceView glView = reference.get();
+				if (glView != null && viewFetcher.isViewSufficientlyShown(glView)) {
+					visibleViews.add(glView);
 				}
-				// 关闭写文件流
-				fos.flush();
-				fos.close();
-			} catch (Exception e) {
-				// 日常记录logcat日志，并打印异常堆栈
-				Log.d(LOG_TAG, "Can't save the screenshot! Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.");
-				e.printStackTrace();
 			}
+			return visibleViews;
+		}
+	}
+
+	/**
+	 * GL view的Render替换状态,只保存弱引用,不会阻止view被回收
+	 * The wrapping state of a GLSurfaceView. Only weak references are kept so that the 
+	 * view can still be garbage collected.
+	 */
+	private static class GLViewState {
+		// 被替换Render的对象,GL线程或view本身
+		private final WeakReference<Object> renderContainer;
+		// Robotium的Render
+		private final WeakReference<GLRenderWrapper> wrapper;
+
+		public GLViewState(Object renderContainer, GLRenderWrapper wrapper) {
+			this.renderContainer = new WeakReference<Object>(renderContainer);
+			this.wrapper = new WeakReference<GLRenderWrapper>(wrapper);
+		}
+
+		/**
+		 * 检查Render是否仍被使用,view重新创建GL线程时需要重新替换
+		 * Returns true if the wrapper is still in use. A view creates a new GL thread, 
+		 * with the original renderer, when it is attached to a window again.
+		 */
+		public boolean isInstalled(GLSurfaceView glView) {
+			Object container = renderContainer.get();
+			if (container == null) {
+				return false;
+			}
+			if (container == glView) {
+				return true;
+			}
+			return container == new Reflect(glView).field("mGLThread").type(GLSurfaceView.class).out(Object.class);
 		}
 	}
 }
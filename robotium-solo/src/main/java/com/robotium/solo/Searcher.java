@@ -36,6 +36,8 @@ class Searcher {
 	Set<TextView> uniqueTextViews;
 	// WebElement缓存
 	List<WebElement> webElements;
+	// webElements中元素的text和xy坐标,用于去重
+	private final Set<WebElementKey> webElementKeys = new HashSet<WebElementKey>();
 	// 统计非重复View数量
 	private int numberOfUniqueViews;
 	private final int TIMEOUT = 5000;
@@ -289,44 +291,40 @@ class Searcher {
 		if(minimumNumberOfMatches < 1){
 			minimumNumberOfMatches = 1;
 		}
-		// 使用by作为过滤条件.获取当前的所有WebElement
-		List<WebElement> viewsFromScreen = webUtils.getWebElements(by, true);
+		// 已找到的element可能在当前页面中重复出现,页面中最多需要查找的数量
+		int maxResults = minimumNumberOfMatches + webElements.size();
+		// 使用by作为过滤条件.获取当前页面中的前maxResults个WebElement
+		List<WebElement> viewsFromScreen = webUtils.getWebElements(by, true, maxResults);
 		// viewsFromScreen中的元素合并到webElement中，并且去重,text，xy坐标一致作为重复判定条件
-		addViewsToList (webElements, viewsFromScreen);
+		addViewsToList (webElements, webElementKeys, viewsFromScreen);
+		// 页面中的查找被截断且去重后数量仍不足时,获取所有WebElement
+		if(webElements.size() < minimumNumberOfMatches && viewsFromScreen.size() >= maxResults){
+			addViewsToList (webElements, webElementKeys, webUtils.getWebElements(by, true));
+		}
 		// 返回指定的WebElement
 		return getViewFromList(webElements, minimumNumberOfMatches);
 	}
 
 	/**
 	 * 列表合并,webElementsOnScreen加入到allWebElements中
- 	 * 使用 text，xy坐标位置作为2个列表中元素是否重复判断条件
-	 * Adds views to a given list.
+ 	 * 使用 text，xy坐标位置作为2个列表中元素是否重复判断条件,通过keysOfAllWebElements查找,不需要遍历allWebElements
+	 * Adds views to a given list. Web elements with the same text and location as an element already 
+	 * in the list are skipped, which is looked up in the set of keys of the list.
 	 * 
 	 * @param allWebElements the list of all views
+	 * @param keysOfAllWebElements the keys of the views in {@code allWebElements}
 	 * @param webTextViewsOnScreen the list of views shown on screen
 	 */
 
-	private void addViewsToList(List<WebElement> allWebElements, List<WebElement> webElementsOnScreen){
-		// 缓存allWebElements中元素的xy坐标
-		int[] xyViewFromSet = new int[2];
-		// 缓存webZElementOnScreen元素的位置xy坐标
+	private void addViewsToList(List<WebElement> allWebElements, Set<WebElementKey> keysOfAllWebElements, List<WebElement> webElementsOnScreen){
+		// 缓存webElementOnScreen元素的位置xy坐标
 		int[] xyViewFromScreen = new int[2];
 		// 遍历
 		for(WebElement textFromScreen : webElementsOnScreen){
-			boolean foundView = false;
 			// 获取屏幕xy坐标
 			textFromScreen.getLocationOnScreen(xyViewFromScreen);
-
-			for(WebElement textFromList : allWebElements){
-				// 获取屏幕对应的xy坐标
-				textFromList.getLocationOnScreen(xyViewFromSet);
-				// allWebElements中已存在的则不重复加入,按照text和xy坐标作为是否相等的条件
-				if(textFromScreen.getText().equals(textFromList.getText()) && xyViewFromScreen[0] == xyViewFromSet[0] && xyViewFromScreen[1] == xyViewFromSet[1]) {
-					foundView = true;
-				}
-			}
-			// 不符合重复判断条件的加入allWebElements列表
-			if(!foundView){
+			// allWebElements中已存在的则不重复加入,按照text和xy坐标作为是否相等的条件
+			if(keysOfAllWebElements.add(new WebElementKey(textFromScreen.getText(), xyViewFromScreen[0], xyViewFromScreen[1]))){
 				allWebElements.add(textFromScreen);
 			}
 		}
@@ -354,8 +352,10 @@ class Searcher {
 			}catch(Exception ignored){}
 		}
 		//找到元素则清空缓存
-		if(webElementToReturn != null)
+		if(webElementToReturn != null){
 			webElements.clear();
+			webElementKeys.clear();
+		}
 		// 返回元素
 		return webElementToReturn;
 	}
@@ -409,5 +409,37 @@ class Searcher {
 		// 清理缓存内容
 		uniqueTextViews.clear();
 		webElements.clear();
+		webElementKeys.clear();
+	}
+
+	/**
+	 * WebElement去重使用的key,由text和xy坐标组成
+	 * Identifies a web element by its text and location when merging search results.
+	 */
+
+	private static class WebElementKey {
+		private final String text;
+		private final int x;
+		private final int y;
+
+		WebElementKey(String text, int x, int y){
+			this.text = text;
+			this.x = x;
+			this.y = y;
+		}
+
+		@Override
+		public boolean equals(Object object){
+			if(!(object instanceof WebElementKey)){
+				return false;
+			}
+			WebElementKey key = (WebElementKey) object;
+			return x == key.x && y == key.y && (text == null ? key.text == null : text.equals(key.text));
+		}
+
+		@Override
+		public int hashCode(){
+			return 31 * (31 * (text == null ? 0 : text.hashCode()) + x) + y;
+		}
 	}
 }
@@ -1,12 +1,16 @@
 package com.robotium.solo;
 
+import java.io.File;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Future;
 import junit.framework.Assert;
 import android.app.Activity;
 import android.app.Instrumentation;
 import android.content.pm.ActivityInfo;
 import android.graphics.PointF;
+import android.graphics.Rect;
 import android.os.Environment;
 import android.util.Log;
 import android.view.KeyEvent;
@@ -195,7 +199,7 @@ public class Solo {
 		this.viewFetcher = new ViewFetcher(instrumentation, sleeper);
 		this.screenshotTaker = new ScreenshotTaker(config, instrumentation, activityUtils, viewFetcher, sleeper);
 		this.dialogUtils = new DialogUtils(instrumentation, activityUtils, viewFetcher, sleeper);
-		this.webUtils = new WebUtils(config, instrumentation,activityUtils,viewFetcher, sleeper);
+		this.webUtils = new WebUtils(config, instrumentation,activityUtils,viewFetcher);
 		this.scroller = new Scroller(config, instrumentation, viewFetcher, sleeper);
 		this.searcher = new Searcher(viewFetcher, webUtils, scroller, sleeper);
 		this.waiter = new Waiter(instrumentation, activityUtils, viewFetcher, searcher,scroller, sleeper);
@@ -255,6 +259,12 @@ public class Solo {
 		 */
 		public String screenshotSavePath = Environment.getExternalStorageDirectory() + "/Robotium-Screenshots/";
 
+		/**
+		 * 截图比较使用的基准图片目录
+		 * The directory of the baseline images used by {@link Solo#compareScreenshot(String)}. Default value is /sdcard/Robotium-Baselines/.
+		 */
+		public String screenshotBaselinePath = Environment.getExternalStorageDirectory() + "/Robotium-Baselines/";
+
 		/**
 		 * 截图类型，默认为jpg
 		 * The screenshot file type, JPEG or PNG. Use ScreenshotFileType.JPEG or ScreenshotFileType.PNG. Default file type is JPEG.
@@ -273,6 +283,35 @@ public class Solo {
 		 */
 		public boolean useJavaScriptToClickWebElements = false;
 
+		/**
+		 * 设置是否在所有可见的WebView中查找WebElement,默认是false,只查找最新的WebView
+		 * Set to true if web elements should be searched for in all shown WebViews at the same time instead 
+		 * of only in the most recently drawn one. Results are merged with those of the most recently drawn 
+		 * WebView first, {@link WebElement#getWebView()} tells where an element was found. Clicks and text 
+		 * entry always use the most recently drawn WebView. Default value is false.
+		 */
+		public boolean webQueriesInAllWebViews = false;
+
+		/**
+		 * WebElement查询结果的发送方式,默认是PROMPT
+		 * How RobotiumWeb.js sends web element data back to Robotium. Default value is WebTransport.PROMPT.
+		 */
+		public WebTransport webTransport = WebTransport.PROMPT;
+
+		/**
+		 * WebElement查询结果的发送方式.PROMPT通过onJsPrompt发送,JAVASCRIPT_INTERFACE通过addJavascriptInterface安装的对象发送,
+		 * 不可用时仍使用PROMPT
+		 * The web transport. PROMPT sends the data through {@code WebChromeClient.onJsPrompt}. JAVASCRIPT_INTERFACE 
+		 * sends it through an object installed with {@code WebView.addJavascriptInterface}, which avoids the 
+		 * synchronous prompt dialog machinery. The object is only available in pages loaded after the first web 
+		 * query; PROMPT is used until then. 
+		 * Only use JAVASCRIPT_INTERFACE in test builds. Set {@link #commandLogging} to log the duration and size of 
+		 * each query to compare the transports.
+		 */
+		public enum WebTransport {
+			PROMPT, JAVASCRIPT_INTERFACE
+		}
+
 		/**
 		 * 截图枚举类型jpg png
 		 * The screenshot file type, JPEG or PNG.
@@ -284,6 +323,68 @@ public class Solo {
 			JPEG, PNG
 		}
 
+		/**
+		 * 截图编码线程数量，默认为2
+		 * The number of threads used to encode and write screenshots. Default value is 2.
+		 */
+		public int screenshotEncoderThreads = 2;
+
+		/**
+		 * 同时等待编码的截图数量上限，默认为4
+		 * The maximum number of screenshots waiting to be encoded. Default value is 4.
+		 */
+		public int screenshotQueueCapacity = 4;
+
+		/**
+		 * 截图编码队列已满时的处理方式，默认为等待
+		 * What to do with a new screenshot when the encoding queue is full. Default value is ScreenshotQueuePolicy.BLOCK.
+		 */
+		public ScreenshotQueuePolicy screenshotQueuePolicy = ScreenshotQueuePolicy.BLOCK;
+
+		/**
+		 * 截图编码队列已满时的处理方式，BLOCK等待空闲位置，DROP丢弃该截图
+		 * The screenshot queue policy. BLOCK waits for a free slot, DROP skips the screenshot.
+		 */
+		public enum ScreenshotQueuePolicy {
+			BLOCK, DROP
+		}
+
+		/**
+		 * 连续截图的保存方式，默认为每一帧保存为单独的文件
+		 * How the frames of a screenshot sequence are saved. Default value is ScreenshotSequenceOutput.FILES.
+		 */
+		public ScreenshotSequenceOutput screenshotSequenceOutput = ScreenshotSequenceOutput.FILES;
+
+		/**
+		 * 连续截图的保存方式，FILES每一帧保存为单独的图片，CONTAINER把所有图片顺序写入一个.rsc文件中，
+		 * DELTA只保存与上一帧不同的区域到一个.rsd文件中
+		 * The screenshot sequence output. FILES saves every frame as a separate image. CONTAINER appends
+		 * the images to a single .rsc file, which can be extracted with {@link ScreenshotContainerReader}.
+		 * DELTA saves only the regions that changed since the previous frame into a single .rsd file, 
+		 * which can be decoded with {@link ScreenshotDeltaDecoder}.
+		 */
+		public enum ScreenshotSequenceOutput {
+			FILES, CONTAINER, DELTA
+		}
+
+		/**
+		 * 连续截图时是否跳过与上一帧相同的画面，默认为false。
+		 * 跳过的帧不计入maxFrames，每一帧的重复次数保存在name_repeats.txt中
+		 * Set to true if frames of a screenshot sequence that are identical to the previous frame should be skipped. 
+		 * Skipped frames do not count towards maxFrames, the number of times each saved frame was seen is written to 
+		 * name_repeats.txt next to the sequence. Default value is false.
+		 */
+		public boolean screenshotSequenceSkipDuplicates = false;
+
+		/**
+		 * WebView截图的最大高度，单位像素，默认为0只截取可见区域。
+		 * 大于0时截取网页内容直到该高度，按WebView高度分块依次保存为name_0，name_1...
+		 * The maximum height in pixels of page content captured in a screenshot of a WebView. Default value is 0, 
+		 * which captures the visible part of the WebView only. Larger values capture the page down to that height,
+		 * saved tile by tile as images of the WebView's height named name_0, name_1 and so on.
+		 */
+		public int webViewScreenshotMaxHeight = 0;
+
 		/**
 		 *  Set to true if Activity tracking should be enabled. Default value is true.
 		 */
@@ -768,6 +869,61 @@ public class Solo {
 		return waiter.waitForCondition(condition, timeout);
 	}
 
+	/**
+	 * Waits for the screen to stop changing, for example for animations to finish. Downscaled frames of the screen are
+	 * compared using a perceptual hash, no screenshots are saved.
+	 *
+	 * @param quietPeriod the amount of time in milliseconds the screen must stay unchanged
+	 * @param timeout the amount of time in milliseconds to wait
+	 * @return {@code true} if the screen stayed unchanged for {@code quietPeriod} and {@code false} if it did not before the timeout
+	 */
+
+	public boolean waitForScreenStable(int quietPeriod, int timeout){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "waitForScreenStable("+quietPeriod+", "+timeout+")");
+		}
+		
+		return screenshotTaker.waitForScreenStable(quietPeriod, timeout);
+	}
+
+	/**
+	 * Compares the screen with a baseline image in {@link Config#screenshotBaselinePath}, allowing each color channel to differ
+	 * slightly. Use a PNG baseline, for example one saved earlier with {@link #takeScreenshot(String)} after setting
+	 * {@link Config#screenshotFileType} to PNG; a name without an extension refers to a .png file. If pixels differ a diff image
+	 * named baselineName_diff is saved in the {@link Config} objects save path.
+	 *
+	 * @param baselineName the name of the baseline image, with or without the file extension
+	 * @return the result of the comparison, or {@code null} if the screen or the baseline could not be read
+	 */
+
+	public ScreenshotComparison compareScreenshot(String baselineName){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "compareScreenshot(\""+baselineName+"\")");
+		}
+		
+		return compareScreenshot(baselineName, ScreenshotTaker.DEFAULT_COMPARE_TOLERANCE);
+	}
+
+	/**
+	 * Compares the screen with a baseline image in {@link Config#screenshotBaselinePath}. Use a PNG baseline, for example one
+	 * saved earlier with {@link #takeScreenshot(String)} after setting {@link Config#screenshotFileType} to PNG; a name without
+	 * an extension refers to a .png file. JPEG baselines are lossy and need a tolerance above 0. If pixels differ a diff image
+	 * named baselineName_diff is saved in the {@link Config} objects save path.
+	 *
+	 * @param baselineName the name of the baseline image, with or without the file extension
+	 * @param tolerance the maximum difference of each color channel, from 0 to 255, for pixels to be considered equal
+	 * @param ignoreRegions the regions of the screen not to compare, in screen coordinates
+	 * @return the result of the comparison, or {@code null} if the screen or the baseline could not be read
+	 */
+
+	public ScreenshotComparison compareScreenshot(String baselineName, int tolerance, Rect... ignoreRegions){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "compareScreenshot(\""+baselineName+"\", "+tolerance+", "+Arrays.toString(ignoreRegions)+")");
+		}
+		
+		return screenshotTaker.compareScreenshot(baselineName, tolerance, ignoreRegions);
+	}
+
 	/**
 	 * Searches for a text in the EditText objects currently displayed and returns true if found. Will automatically scroll when needed.
 	 *
@@ -3339,6 +3495,23 @@ public class Solo {
 		return webUtils.getWebElements(by, true);
 	}
 
+	/**
+	 * Compares the throughput of the web transports in {@link Config.WebTransport} by querying all WebElements of the active WebView
+	 * the given number of times over each of them. The JavaScript interface is only available in pages loaded after the first web query
+	 * with {@link Config#webTransport} set to JAVASCRIPT_INTERFACE; results that still arrive over prompt are counted as prompt.
+	 *
+	 * @param repetitions the number of queries per transport
+	 * @return the number of queries, WebElements, characters and milliseconds of each transport and the ratio of their throughput
+	 */
+
+	public String compareWebTransports(int repetitions){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "compareWebTransports("+repetitions+")");
+		}
+
+		return webUtils.compareTransports(repetitions);
+	}
+
 	/**
 	 * Checks if a RadioButton matching the specified index is checked.
 	 *
@@ -3870,6 +4043,157 @@ public class Solo {
 		screenshotTaker.takeScreenshot(name, quality);
 	}
 
+	/**
+	 * Takes a screenshot of the specified View and saves it with the specified name in the {@link Config} objects save path (default set to: /sdcard/Robotium-Screenshots/).
+	 * Only the View and its children are drawn and the image has the size of the View.
+	 * Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.
+	 *
+	 * @param view the {@link View} to take a screenshot of
+	 * @param name the name to give the screenshot
+	 */
+
+	public void takeScreenshot(View view, String name){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "takeScreenshot("+view+", \""+name+"\")");
+		}
+		
+		takeScreenshot(view, name, 100);
+	}
+
+	/**
+	 * Takes a screenshot of the specified View and saves it with the specified name in the {@link Config} objects save path (default set to: /sdcard/Robotium-Screenshots/).
+	 * Only the View and its children are drawn and the image has the size of the View.
+	 * Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.
+	 *
+	 * @param view the {@link View} to take a screenshot of
+	 * @param name the name to give the screenshot
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality)
+	 */
+
+	public void takeScreenshot(View view, String name, int quality){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "takeScreenshot("+view+", \""+name+"\", "+quality+")");
+		}
+		
+		screenshotTaker.takeScreenshot(view, name, quality);
+	}
+
+	/**
+	 * Takes a screenshot of the specified region of the screen and saves it with the specified name in the {@link Config} objects save path (default set to: /sdcard/Robotium-Screenshots/).
+	 * Only the Views intersecting the region are drawn and the image has the size of the region.
+	 * Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.
+	 *
+	 * @param region the region to take a screenshot of, in screen coordinates
+	 * @param name the name to give the screenshot
+	 */
+
+	public void takeScreenshot(Rect region, String name){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "takeScreenshot("+region+", \""+name+"\")");
+		}
+		
+		takeScreenshot(region, name, 100);
+	}
+
+	/**
+	 * Takes a screenshot of the specified region of the screen and saves it with the specified name in the {@link Config} objects save path (default set to: /sdcard/Robotium-Screenshots/).
+	 * Only the Views intersecting the region are drawn and the image has the size of the region.
+	 * Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.
+	 *
+	 * @param region the region to take a screenshot of, in screen coordinates
+	 * @param name the name to give the screenshot
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality)
+	 */
+
+	public void takeScreenshot(Rect region, String name, int quality){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "takeScreenshot("+region+", \""+name+"\", "+quality+")");
+		}
+		
+		screenshotTaker.takeScreenshot(region, name, quality);
+	}
+
+	/**
+	 * Takes a screenshot and saves it with the specified name in the {@link Config} objects save path (default set to: /sdcard/Robotium-Screenshots/).
+	 * Returns as soon as the screen has been captured, the image is compressed and saved in the background.
+	 * Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.
+	 *
+	 * @param name the name to give the screenshot
+	 * @return a {@code Future} returning the saved {@code File}, or {@code null} if the screenshot could not be saved
+	 * @see #flushScreenshots() flushScreenshots() to wait for all screenshots to be saved
+	 */
+
+	public Future<File> takeScreenshotAsync(String name){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "takeScreenshotAsync(\""+name+"\")");
+		}
+		
+		return takeScreenshotAsync(name, 100);
+	}
+
+	/**
+	 * Takes a screenshot and saves the image with the specified name in the {@link Config} objects save path (default set to: /sdcard/Robotium-Screenshots/).
+	 * Returns as soon as the screen has been captured, the image is compressed and saved in the background.
+	 * Screenshots taken with this method are saved in the order they were taken.
+	 * Requires write permission (android.permission.WRITE_EXTERNAL_STORAGE) in AndroidManifest.xml of the application under test.
+	 *
+	 * @param name the name to give the screenshot
+	 * @param quality the compression rate. From 0 (compress for lowest size) to 100 (compress for maximum quality)
+	 * @return a {@code Future} returning the saved {@code File}, or {@code null} if the screenshot could not be saved
+	 * @see #flushScreenshots() flushScreenshots() to wait for all screenshots to be saved
+	 */
+
+	public Future<File> takeScreenshotAsync(String name, int quality){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "takeScreenshotAsync(\""+name+"\", "+quality+")");
+		}
+		
+		return screenshotTaker.takeScreenshotAsync(name, quality);
+	}
+
+	/**
+	 * Waits until all screenshots taken so far have been saved. Usually used in tearDown(). Default timeout is 20 seconds.
+	 *
+	 * @return {@code true} if all screenshots were saved and {@code false} if the timeout was reached
+	 */
+
+	public boolean flushScreenshots(){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "flushScreenshots()");
+		}
+		
+		return screenshotTaker.flushScreenshots(Timeout.getLargeTimeout());
+	}
+
+	/**
+	 * Returns the number of screenshots taken but not yet encoded and saved.
+	 *
+	 * @return the number of screenshots waiting to be encoded
+	 */
+
+	public int getScreenshotQueueDepth(){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "getScreenshotQueueDepth()");
+		}
+
+		return screenshotTaker.getScreenshotQueueDepth();
+	}
+
+	/**
+	 * Returns the average time spent compressing and writing a screenshot. Time a sequence frame spends
+	 * waiting for the previous frame to be written is not included.
+	 *
+	 * @return the average encode latency in milliseconds, or 0 if no screenshot has been saved yet
+	 */
+
+	public long getAverageScreenshotEncodeLatency(){
+		if(config.commandLogging){
+			Log.d(config.commandLoggingTag, "getAverageScreenshotEncodeLatency()");
+		}
+
+		return screenshotTaker.getAverageScreenshotEncodeLatency();
+	}
+
 	/**
 	 * Takes a screenshot sequence and saves the images with the specified name prefix in the {@link Config} objects save path (default set to: /sdcard/Robotium-Screenshots/).
 	 *
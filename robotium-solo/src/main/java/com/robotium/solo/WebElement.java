@@ -1,6 +1,9 @@
 package com.robotium.solo;
 
+import java.lang.ref.WeakReference;
 import java.util.Hashtable;
+import java.util.Map;
+import android.webkit.WebView;
 
 /**
  * 定义WebView中各类元素，类似input之类的
@@ -11,6 +14,14 @@ import java.util.Hashtable;
  */
 
 public class WebElement {
+	// 延迟截取的字段,在fieldBounds中的下标
+	static final int ID = 0;
+	static final int TEXT = 1;
+	static final int NAME = 2;
+	static final int CLASS_NAME = 3;
+	static final int TAG_NAME = 4;
+	static final int ATTRIBUTES = 5;
+	static final int NUMBER_OF_FIELDS = 6;
 	 // 对应屏幕中的该控件中间位置x坐标
 	private int locationX = 0;
 	// 对应屏幕中的该控件中间位置y坐标
@@ -25,8 +36,18 @@ public class WebElement {
 	private String className;
 	// Web元素tag
 	private String tagName;
-	// 其他额外属性
-	private Hashtable<String, String> attributes;
+	// 其他额外属性的名字,与attributeValues按下标一一对应
+	private String[] attributeNames;
+	// 其他额外属性的值
+	private String[] attributeValues;
+	// 所在的WebView,弱引用避免缓存的WebElement持有WebView
+	private WeakReference<WebView> webView;
+	// 同一批查询结果共用的字符串,字段都截取后为null
+	private String source;
+	// 各字段在source中的起止位置
+	private int[] fieldBounds;
+	// 还未截取的字段,每个字段一位
+	private int pendingFields;
 	
 
 	/**
@@ -51,6 +72,67 @@ public class WebElement {
 		this.setAttributes(attributes);
 	}
 
+	/**
+	 * 构造函数,字段在使用时才从source中截取
+	 * Constructs this object from the data of a query. The strings of the fields are only created 
+	 * when they are first read.
+	 * 
+	 * @param source the data of the query, shared by the web elements of the query
+	 * @param fieldBounds the start and end index in {@code source} of the id, text, name, class name, tag name and attributes
+	 */
+
+	WebElement(String source, int[] fieldBounds) {
+		this.source = source;
+		this.fieldBounds = fieldBounds;
+		this.pendingFields = (1 << NUMBER_OF_FIELDS) - 1;
+	}
+
+	/**
+	 * 截取还未截取的字段,所有字段都截取后释放source
+	 * Creates the string of a field that has not been read yet and returns it, the shared data is 
+	 * released once all fields have been read.
+	 * 
+	 * @param field the field to create
+	 * @return the string of the field
+	 */
+
+	private String materialize(int field) {
+		String value = source.substring(fieldBounds[2 * field], fieldBounds[2 * field + 1]);
+		setMaterialized(field);
+		return value;
+	}
+
+	/**
+	 * 标记字段已截取或已被设置
+	 * Marks a field as read or set, it is no longer taken from the shared data.
+	 */
+
+	private void setMaterialized(int field) {
+		pendingFields &= ~(1 << field);
+		if(pendingFields == 0){
+			source = null;
+			fieldBounds = null;
+		}
+	}
+
+	private boolean isPending(int field) {
+		return (pendingFields & (1 << field)) != 0;
+	}
+
+	/**
+	 * 截取其他属性
+	 * Parses the attributes if they have not been read yet.
+	 */
+
+	private void materializeAttributes() {
+		if(isPending(ATTRIBUTES)){
+			String[][] attributes = WebElementCreator.parseAttributes(source, fieldBounds[2 * ATTRIBUTES], fieldBounds[2 * ATTRIBUTES + 1]);
+			attributeNames = attributes[0];
+			attributeValues = attributes[1];
+			setMaterialized(ATTRIBUTES);
+		}
+	}
+
 	/**
 	 * 获取 WebElement元素对应的屏幕坐标
 	 * Returns the WebElements location on screen.
@@ -106,6 +188,53 @@ public class WebElement {
 		return this.locationY;
 	}
 
+	/**
+	 * 获取WebElement所在的WebView
+	 * Returns the {@code WebView} the web element is shown in.
+	 * 
+	 * @return the {@code WebView}, or {@code null} if it is unknown or no longer exists
+	 */
+
+	public WebView getWebView(){
+		return webView != null ? webView.get() : null;
+	}
+
+	/**
+	 * 设置WebElement所在的WebView
+	 * Sets the {@code WebView} the web element is shown in.
+	 * 
+	 * @param webView the {@code WebView}
+	 */
+
+	void setWebView(WebView webView){
+		this.webView = new WeakReference<WebView>(webView);
+	}
+
+	/**
+	 * 复制WebElement,还未截取的字段继续共用同一批查询结果的字符串
+	 * Returns a copy of this web element. Fields that have not been read yet are still taken from
+	 * the shared data of the query, and changing the copy does not change this web element.
+	 *
+	 * @return the copy
+	 */
+
+	synchronized WebElement copy(){
+		WebElement copy = new WebElement(source, fieldBounds);
+		copy.pendingFields = pendingFields;
+		copy.locationX = locationX;
+		copy.locationY = locationY;
+		copy.id = id;
+		copy.text = text;
+		copy.name = name;
+		copy.className = className;
+		copy.tagName = tagName;
+		// 属性数组只会被整体替换,不会被修改,可以共用
+		copy.attributeNames = attributeNames;
+		copy.attributeValues = attributeValues;
+		copy.webView = webView;
+		return copy;
+	}
+
 	/**
 	 * 获取id
 	 * Returns the id.
@@ -113,7 +242,10 @@ public class WebElement {
 	 * @return the id
 	 */
 
-	public String getId() {
+	public synchronized String getId() {
+		if(isPending(ID)){
+			id = materialize(ID);
+		}
 		return id;
 	}
 
@@ -124,8 +256,9 @@ public class WebElement {
 	 * @param id the id to set
 	 */
 
-	public void setId(String id) {
+	public synchronized void setId(String id) {
 		this.id = id;
+		setMaterialized(ID);
 	}
 
 	/**
@@ -135,7 +268,10 @@ public class WebElement {
 	 * @return the name
 	 */
 
-	public String getName() {
+	public synchronized String getName() {
+		if(isPending(NAME)){
+			name = materialize(NAME);
+		}
 		return name;
 	}
 
@@ -146,8 +282,9 @@ public class WebElement {
 	 * @param name the name to set
 	 */
 
-	public void setName(String name) {
+	public synchronized void setName(String name) {
 		this.name = name;
+		setMaterialized(NAME);
 	}
 
 	/**
@@ -157,7 +294,10 @@ public class WebElement {
 	 * @return the class name
 	 */
 
-	public String getClassName() {
+	public synchronized String getClassName() {
+		if(isPending(CLASS_NAME)){
+			className = materialize(CLASS_NAME);
+		}
 		return className;
 	}
 
@@ -168,8 +308,9 @@ public class WebElement {
 	 * @param className the class name to set
 	 */
 
-	public void setClassName(String className) {
+	public synchronized void setClassName(String className) {
 		this.className = className;
+		setMaterialized(CLASS_NAME);
 	}
 
 	/**
@@ -179,7 +320,10 @@ public class WebElement {
 	 * @return the tag name
 	 */
 
-	public String getTagName() {
+	public synchronized String getTagName() {
+		if(isPending(TAG_NAME)){
+			tagName = materialize(TAG_NAME);
+		}
 		return tagName;
 	}
 
@@ -190,8 +334,9 @@ public class WebElement {
 	 * @param tagName the tag name to set
 	 */
 
-	public void setTagName(String tagName) {
+	public synchronized void setTagName(String tagName) {
 		this.tagName = tagName;
+		setMaterialized(TAG_NAME);
 	}
 
 	/**
@@ -201,7 +346,10 @@ public class WebElement {
 	 * @return the text content
 	 */
 
-	public String getText() {
+	public synchronized String getText() {
+		if(isPending(TEXT)){
+			text = materialize(TEXT);
+		}
 		return text;
 	}
 
@@ -212,8 +360,9 @@ public class WebElement {
 	 * @param textContent the text content to set
 	 */
 	
-	public void setTextContent(String textContent) {
+	public synchronized void setTextContent(String textContent) {
 		this.text = textContent;
+		setMaterialized(TEXT);
 	}
 
 	/**
@@ -223,9 +372,15 @@ public class WebElement {
 	 * @return the value for the specified attribute
 	 */
 
-	public String getAttribute(String attributeName) {
+	public synchronized String getAttribute(String attributeName) {
+		materializeAttributes();
 		if (attributeName != null){
-			return this.attributes.get(attributeName);
+			// 属性数量很少,直接遍历.同名属性以最后一个为准
+			for (int i = attributeNames.length - 1; i >= 0; i--){
+				if (attributeName.equals(attributeNames[i])){
+					return attributeValues[i];
+				}
+			}
 		}
 		
 		return null;
@@ -238,8 +393,22 @@ public class WebElement {
 	 * @param attributes the attributes to set
 	 */
 	
-	public void setAttributes(Hashtable<String,String> attributes) {
-		this.attributes = attributes;
+	public synchronized void setAttributes(Hashtable<String,String> attributes) {
+		int size = attributes != null ? attributes.size() : 0;
+		String[] names = new String[size];
+		String[] values = new String[size];
+
+		if (attributes != null){
+			int i = 0;
+			for (Map.Entry<String, String> attribute : attributes.entrySet()){
+				names[i] = attribute.getKey();
+				values[i] = attribute.getValue();
+				i++;
+			}
+		}
+		this.attributeNames = names;
+		this.attributeValues = values;
+		setMaterialized(ATTRIBUTES);
 	}
 
 }
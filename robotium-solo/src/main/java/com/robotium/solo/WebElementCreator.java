@@ -1,10 +1,17 @@
 package com.robotium.solo;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.robotium.solo.Solo.Config;
 import android.os.SystemClock;
+import android.util.Log;
 import android.webkit.WebView;
 
 /**
@@ -17,120 +24,293 @@ import android.webkit.WebView;
  */
 
 class WebElementCreator {
-	// 存储WebElement
-	private List<WebElement> webElements;
-	// 延时工具类
-	private Sleeper sleeper;
-	// 标识符号,用于标识WebView内容解析是否已经完成
-	private boolean isFinished = false;
+	// 批量发送element信息的前缀
+	static final String ELEMENTS_PREFIX = "robotium-elements:";
+	// 查询结束消息的前缀
+	static final String FINISHED_PREFIX = "robotium-finished:";
+	// 页面没有变化,使用缓存结果的消息前缀
+	static final String UNCHANGED_PREFIX = "robotium-unchanged:";
+	// element信息之间的分隔符
+	private static final char RESULT_SEPARATOR = '\u001e';
+	// 字段分隔符
+	private static final String FIELD_SEPARATOR = ";,";
+	// 属性分隔符
+	private static final String ATTRIBUTE_SEPARATOR = "#$";
+	// 属性名字和值的分隔符
+	private static final String VALUE_SEPARATOR = "::";
+	private static final String[] NO_ATTRIBUTES = new String[0];
+	// 等待WebElement创建完成的超时时间
+	private static final long TIMEOUT_WEB_ELEMENTS = 5000;
+	// 通过prompt发送的消息
+	static final String TRANSPORT_PROMPT = "prompt";
+	// 通过JavaScript bridge发送的消息
+	static final String TRANSPORT_JAVASCRIPT_INTERFACE = "JavaScript interface";
+	// 页面没有变化,使用缓存的结果
+	private static final String TRANSPORT_SNAPSHOT = "snapshot";
+	// 配置
+	private final Config config;
+	// 查询编号
+	private final AtomicInteger nextQueryId = new AtomicInteger();
+	// 正在进行的查询,按编号保存
+	private final ConcurrentHashMap<Integer, Query> queries = new ConcurrentHashMap<Integer, Query>();
+	// 每个线程当前的查询,每个WebView一个
+	private final ThreadLocal<List<Query>> currentQueries = new ThreadLocal<List<Query>>();
+	// 每个WebView最近一次可缓存查询的结果
+	private final Map<WebView, Snapshot> snapshots = new WeakHashMap<WebView, Snapshot>();
+	// 每种发送方式的累计统计,用于比较吞吐量
+	private final Map<String, TransportStatistics> transportStatistics = new HashMap<String, TransportStatistics>();
 
 	/**
 	 * 构造函数
 	 * Constructs this object.
 	 * 
-	 * @param sleeper the {@code Sleeper} instance
+	 * @param config the {@code Config} instance
 	 * 
 	 */
 
-	public WebElementCreator(Sleeper sleeper){
-		this.sleeper = sleeper;
-		// 创建一个存储实例，使用copyOnweite可以保证复制list时重新构造一份新的，对原有不造成影响
-		webElements = new CopyOnWriteArrayList<WebElement>();
+	public WebElementCreator(Config config){
+		this.config = config;
 	}
 
 	/**
-	 * 初始化
-	 * Prepares for start of creating {@code TextView} objects based on web elements 
+	 * 初始化,为每个WebView开始一次新的查询,该线程之前的查询结果不再接收
+	 * Prepares for start of creating {@code TextView} objects based on web elements. A new query is 
+	 * started for each {@code WebView} the JavaScript is executed in, results still arriving for the 
+	 * previous queries of the calling thread are ignored.
+	 * 
+	 * @param numberOfQueries the number of {@code WebView} objects the JavaScript is executed in
+	 * @return the new queries, their ids have to be passed to RobotiumWeb.js
 	 */
 
-	public void prepareForStart(){
-		// 重置为false
-		setFinished(false);
-		// 清空已存储的WebElement
-		webElements.clear();
+	public List<Query> prepareForStart(int numberOfQueries){
+		List<Query> previousQueries = currentQueries.get();
+		if(previousQueries != null){
+			for(Query previousQuery : previousQueries){
+				queries.remove(previousQuery.id);
+			}
+		}
+		List<Query> newQueries = new ArrayList<Query>(numberOfQueries);
+		for(int i = 0; i < numberOfQueries; i++){
+			Query query = new Query(nextQueryId.incrementAndGet());
+			queries.put(query.id, query);
+			newQueries.add(query);
+		}
+		currentQueries.set(newQueries);
+		return newQueries;
 	}
 
 	/**
-	 * 获取当前 WebView中的WebElement
-	 * Returns an {@code ArrayList} of {@code TextView} objects based on the web elements shown
+	 * 等待当前线程最近一次的查询完成并合并查询到的WebElement,最多等待5s
+	 * Waits up to 5 seconds for the latest queries of the calling thread to finish and returns the 
+	 * {@code WebElement} objects they created, in the order the queries were started.
 	 * 
-	 * @return an {@code ArrayList} of {@code TextView} objects based on the web elements shown
+	 * @return an {@code ArrayList} of {@code WebElement} objects based on the web elements shown
 	 */
 
 	public ArrayList<WebElement> getWebElementsFromWebViews(){
-		// 等待WebView元素被解析
-		waitForWebElementsToBeCreated();
-		// copy一份对象返回
-		return new ArrayList<WebElement>(webElements);
+		ArrayList<WebElement> webElements = new ArrayList<WebElement>();
+		List<Query> queriesToWaitFor = currentQueries.get();
+		if(queriesToWaitFor == null){
+			return webElements;
+		}
+		// 所有WebView共用一个超时时间
+		final long endTime = SystemClock.uptimeMillis() + TIMEOUT_WEB_ELEMENTS;
+		for(Query query : queriesToWaitFor){
+			// 等待WebView元素被解析
+			query.await(Math.max(0, endTime - SystemClock.uptimeMillis()));
+			ArrayList<WebElement> webElementsOfQuery = query.getWebElements();
+			webElements.addAll(webElementsOfQuery);
+			query.addStatisticsTo(transportStatistics, webElementsOfQuery.size());
+			if(config.commandLogging){
+				Log.d(config.commandLoggingTag, query.getStatistics(webElementsOfQuery.size()));
+			}
+		}
+		return webElements;
 	}
 
 	/**
-	 * 获取WebView内容解析状态
-	 * true   解析已完成
-	 * false  解析还未完成
-	 *
-	 * Returns true if all {@code TextView} objects based on web elements have been created
+	 * 清空每种发送方式的累计统计
+	 * Clears the statistics collected for each transport.
+	 */
+
+	public void resetTransportStatistics(){
+		synchronized(transportStatistics){
+			transportStatistics.clear();
+		}
+	}
+
+	/**
+	 * 比较prompt和JavaScript bridge的吞吐量,只统计完整结束且不是由缓存结果回答的查询
+	 * Compares the throughput of prompt and the JavaScript interface over the queries collected since 
+	 * {@link #resetTransportStatistics()}. Only queries that finished and were not answered from a 
+	 * snapshot are counted, under the transport that actually delivered their results.
 	 * 
-	 * @return true if all {@code TextView} objects based on web elements have been created
+	 * @return a description of the queries, elements, characters and time of each transport and their throughput ratio
 	 */
 
-	public boolean isFinished(){
-		return isFinished;
+	public String getTransportComparison(){
+		synchronized(transportStatistics){
+			TransportStatistics prompt = transportStatistics.get(TRANSPORT_PROMPT);
+			TransportStatistics bridge = transportStatistics.get(TRANSPORT_JAVASCRIPT_INTERFACE);
+			StringBuilder comparison = new StringBuilder();
+			comparison.append(TRANSPORT_PROMPT).append(": ").append(prompt != null ? prompt : "no queries");
+			comparison.append("; ").append(TRANSPORT_JAVASCRIPT_INTERFACE).append(": ").append(bridge != null ? bridge : "no queries");
+			if(prompt != null && bridge != null && prompt.getThroughput() > 0){
+				comparison.append("; ").append(TRANSPORT_JAVASCRIPT_INTERFACE).append(" throughput is ")
+				.append(String.format("%.2f", bridge.getThroughput() / prompt.getThroughput())).append("x ").append(TRANSPORT_PROMPT);
+			}
+			return comparison.toString();
+		}
 	}
 
+	/**
+	 * 查询结束,通知等待的线程.可缓存的查询同时保存结果和页面状态
+	 * Called when RobotiumWeb.js has sent all results of a query. The results of a query that uses 
+	 * snapshots are kept together with the page state sent by RobotiumWeb.js.
+	 * 
+	 * @param message the robotium-finished message, followed by the query id and optionally ':' and the page state
+	 * @param webView the {@code WebView} the query was executed in
+	 */
+
+	public void setFinished(String message, WebView webView){
+		Query query = getQuery(message, FINISHED_PREFIX.length());
+		if(query == null){
+			return;
+		}
+		int stateStart = message.indexOf(':', FINISHED_PREFIX.length());
+		if(query.snapshotKey != null && stateStart != -1){
+			Snapshot snapshot = new Snapshot(query.snapshotKey, message.substring(stateStart + 1), query, query.getWebElements());
+			synchronized(snapshots){
+				snapshots.put(webView, snapshot);
+			}
+		}
+		query.finish();
+	}
 
 	/**
-	 * 设置WebView解析是否完成状态
-	 * true   已完成解析
-	 * false  解析未完成
-	 *
-	 * Set to true if all {@code TextView} objects have been created
+	 * 页面自上次查询后没有变化,使用缓存的结果结束查询
+	 * Called when RobotiumWeb.js reports that the page has not changed since the snapshot offered 
+	 * with {@link #getSnapshotState(Query, WebView, String)}. The query is answered from the snapshot.
 	 * 
-	 * @param isFinished true if all {@code TextView} objects have been created
+	 * @param message the robotium-unchanged message, followed by the query id
 	 */
 
-	public void setFinished(boolean isFinished){
-		this.isFinished = isFinished;
+	public void setUnchanged(String message){
+		Query query = getQuery(message, UNCHANGED_PREFIX.length());
+		if(query == null){
+			return;
+		}
+		if(query.offeredSnapshot != null){
+			// 返回副本,调用者修改WebElement不会影响之后的查询
+			query.addAll(query.offeredSnapshot.copyWebElements(), 0, TRANSPORT_SNAPSHOT);
+		}
+		query.finish();
 	}
 
 	/**
-	 * 按照指定信息，获取WebView中的WebElement并加入到webElements中
-	 * Creates a {@ WebElement} object from the given text and {@code WebView}
+	 * 获取WebView中相同查询的缓存结果对应的页面状态,没有可用的缓存时返回空字符串.
+	 * RobotiumWeb.js中页面状态相同时直接使用缓存结果
+	 * Marks the query as one that uses snapshots and returns the page state of the snapshot kept 
+	 * for the same query in the {@code WebView}. RobotiumWeb.js answers with robotium-unchanged 
+	 * instead of enumerating the page if the page still has this state. An empty string is returned 
+	 * if there is no snapshot, or if the {@code WebView} was moved or zoomed since it was taken.
 	 * 
-	 * @param webData the data of the web element 
-	 * @param webView the {@code WebView} the text is shown in
+	 * @param query the query, its {@code WebView} location has to be set
+	 * with {@link Query#setLocationOfWebView(float, int[])}
+	 * @param webView the {@code WebView} the query is executed in
+	 * @param key identifies the query, queries with the same key return the same results on an unchanged page
+	 * @return the page state of the snapshot, or an empty string
 	 */
 
-	public void createWebElementAndAddInList(String webData, WebView webView){
-		// 获取WebElement
-		WebElement webElement = createWebElementAndSetLocation(webData, webView);
-		// 非空则加入WebElement列表
-		if((webElement!=null)) 
-			webElements.add(webElement);
+	public String getSnapshotState(Query query, WebView webView, String key){
+		query.snapshotKey = key;
+		Snapshot snapshot;
+		synchronized(snapshots){
+			snapshot = snapshots.get(webView);
+		}
+		if(snapshot == null || !snapshot.key.equals(key) || !snapshot.isAt(query)){
+			return "";
+		}
+		query.offeredSnapshot = snapshot;
+		return snapshot.state;
+	}
+
+	/**
+	 * 解析批量发送的element信息,全部解析后一次加入到所属查询中
+	 * Creates {@code WebElement} objects from a batch of web element data sent by RobotiumWeb.js 
+	 * and adds them all at once to the query they belong to. Called on the UI thread for prompt and 
+	 * on the JavaBridge thread for the JavaScript interface, so the {@code WebView} is only used as 
+	 * a reference: its scale and location are the ones recorded when the query was issued.
+	 * 
+	 * @param batch the web element data: the prefix, the query id and ':', then the web elements separated by \u001e
+	 * @param webView the {@code WebView} the web elements are shown in
+	 * @param transport how the batch was sent, {@code TRANSPORT_PROMPT} or {@code TRANSPORT_JAVASCRIPT_INTERFACE}
+	 */
+
+	public void createWebElementsAndAddInList(String batch, WebView webView, String transport){
+		int idEnd = batch.indexOf(':', ELEMENTS_PREFIX.length());
+		Query query = idEnd == -1 ? null : getQuery(batch, ELEMENTS_PREFIX.length());
+		// 已经结束或被替换的查询,不再解析
+		if(query == null){
+			return;
+		}
+		ArrayList<WebElement> createdWebElements = new ArrayList<WebElement>();
+		int start = idEnd + 1;
+		// 使用发起查询时在UI线程中记录的WebView缩放比例和屏幕坐标
+		float scale = query.getScale();
+		int[] locationOfWebViewXY = query.getLocationOfWebView();
+
+		while(start < batch.length()){
+			int end = batch.indexOf(RESULT_SEPARATOR, start);
+			if(end == -1){
+				end = batch.length();
+			}
+			WebElement webElement = createWebElementAndSetLocation(batch, start, end, scale, locationOfWebViewXY);
+			if(webElement != null){
+				webElement.setWebView(webView);
+				createdWebElements.add(webElement);
+			}
+			start = end + 1;
+		}
+		query.addAll(createdWebElements, batch.length(), transport);
+	}
+
+	/**
+	 * 按照消息中的编号获取正在进行的查询
+	 * Returns the running query with the id found in the message at the given index, the id ends at 
+	 * the next ':' or at the end of the message.
+	 */
+
+	private Query getQuery(String message, int idStart){
+		int idEnd = message.indexOf(':', idStart);
+		if(idEnd == -1){
+			idEnd = message.length();
+		}
+		try{
+			return queries.get(Integer.valueOf(message.substring(idStart, idEnd)));
+		}catch(NumberFormatException e){
+			return null;
+		}
 	}
 
 	/**
 	 * 设置WebElement坐标属性
 	 * webElement 需要设置的WebElement
-	 * webView    WebElement所在的WebView
+	 * scale      WebElement所在WebView的缩放比例
+	 * locationOfWebViewXY WebView在屏幕中的坐标
 	 *
 	 * Sets the location of a {@code WebElement} 
 	 * 
 	 * @param webElement the {@code TextView} object to set location 
-	 * @param webView the {@code WebView} the text is shown in
+	 * @param scale the scale of the {@code WebView} the text is shown in
+	 * @param locationOfWebViewXY the location of the {@code WebView} on the screen
 	 * @param x the x location to set
 	 * @param y the y location to set
 	 * @param width the width to set
 	 * @param height the height to set
 	 */
 
-	private void setLocation(WebElement webElement, WebView webView, int x, int y, int width, int height ){
-		// 获取页面缩放信息
-		float scale = webView.getScale();
-		// 储存屏幕坐标
-		int[] locationOfWebViewXY = new int[2];
-		// 获取WebView对应手机屏幕中的坐标
-		webView.getLocationOnScreen(locationOfWebViewXY);
+	private void setLocation(WebElement webElement, float scale, int[] locationOfWebViewXY, int x, int y, int width, int height ){
 		// 计算可以点击的x坐标,取WebElement中间位置
 		int locationX = (int) (locationOfWebViewXY[0] + (x + (Math.floor(width / 2))) * scale);
 		// 计算可操作的 y坐标,取WebElement中间位置
@@ -141,81 +321,393 @@ class WebElementCreator {
 	}
 
 	/**
-	 * 按照给定信息获取WebView中对应的元素
-	 * Creates a {@code WebView} object 
+	 * 按照给定信息获取WebView中对应的元素.
+	 * 只遍历一次字符串,按下标记录各字段的位置,只解析坐标,其他字段在使用时才截取.
+	 * 字段用;,分隔:id,text,name,class,tag,x,y,width,height,其他属性.
+	 * 其他属性用#$分隔,名字和值用::分隔
+	 * Creates a {@code WebElement} object from the data between {@code start} and {@code end}. The data 
+	 * is read in a single pass by index. Only the location is parsed, the {@code WebElement} keeps the 
+	 * data and the bounds of the other fields and creates their strings when they are first read. Fields are 
+	 * separated by ";,": id, text, name, class name, tag name, x, y, width, height and the attributes. 
+	 * Attributes are separated by "#$", with "::" between name and value.
 	 * 
-	 * @param information the data of the web element
-	 * @param webView the web view the text is shown in
+	 * @param information the data of one or more web elements
+	 * @param start the index of the first character of the web element
+	 * @param end the index after the last character of the web element
+	 * @param scale the scale of the web view the text is shown in
+	 * @param locationOfWebViewXY the location of the web view on the screen
 	 * 
-	 * @return a {@code WebElement} object with a given text and location
-	 */
-
-	private WebElement createWebElementAndSetLocation(String information, WebView webView){
-		// 解析属性，按照;,划分
-		String[] data = information.split(";,");
-		String[] elements = null;
-		int x = 0;
-		int y = 0;
-		int width = 0;
-		int height = 0;
-		Hashtable<String, String> attributes = new Hashtable<String, String>();
-		try{
-			// 解析对应的x坐标
-			x = Math.round(Float.valueOf(data[5]));
-			// 解析对应的y坐标
-			y = Math.round(Float.valueOf(data[6]));
-			// 解析宽度信息
-			width = Math.round(Float.valueOf(data[7]));
-			// 解析高度信息
-			height = Math.round(Float.valueOf(data[8]));	
-			// 解析剩余属性
-			elements = data[9].split("\\#\\$");
-		}catch(Exception ignored){}
-		// 属性为key value格式,使用::分隔
-		if(elements != null) {
-			for (int index = 0; index < elements.length; index++){
-				String[] element = elements[index].split("::");
-				// 对于只有key的属性，key也作为value使用
-				if (element.length > 1) {
-					attributes.put(element[0], element[1]);
-				} else {
-					attributes.put(element[0], element[0]);
-				}
+	 * @return a {@code WebElement} object with a given text and location, or {@code null} if the data is incomplete
+	 */
+
+	private WebElement createWebElementAndSetLocation(String information, int start, int end, float scale, int[] locationOfWebViewXY){
+		// id,text,name,class,tag和其他属性的起止位置
+		int[] fieldBounds = new int[WebElement.NUMBER_OF_FIELDS * 2];
+		int position = start;
+		// 记录id,text,name,class,tag的位置
+		for(int i = 0; i < WebElement.ATTRIBUTES; i++){
+			if(position > end){
+				return null;
 			}
+			int separator = indexOf(information, FIELD_SEPARATOR, position, end);
+			fieldBounds[2 * i] = position;
+			fieldBounds[2 * i + 1] = separator;
+			position = separator + FIELD_SEPARATOR.length();
 		}
+		// 解析x,y,width,height,解析失败时其余为0且不解析其他属性
+		int[] bounds = new int[4];
+		boolean boundsParsed = true;
+		for(int i = 0; i < bounds.length; i++){
+			if(position > end){
+				boundsParsed = false;
+				break;
+			}
+			int separator = indexOf(information, FIELD_SEPARATOR, position, end);
+			try{
+				bounds[i] = parseCoordinate(information, position, separator);
+			}catch(NumberFormatException e){
+				boundsParsed = false;
+				break;
+			}
+			position = separator + FIELD_SEPARATOR.length();
+		}
+		// 记录剩余属性的位置,没有属性时为空区间
+		fieldBounds[2 * WebElement.ATTRIBUTES] = boundsParsed && position < end ? position : end;
+		fieldBounds[2 * WebElement.ATTRIBUTES + 1] = end;
 
 		WebElement webElement = null;
 
 		try{
 			// 构造WebElement对象
-			webElement = new WebElement(data[0], data[1], data[2], data[3], data[4], attributes);
+			webElement = new WebElement(information, fieldBounds);
 			// 设置位置信息
-			setLocation(webElement, webView, x, y, width, height);
+			setLocation(webElement, scale, locationOfWebViewXY, bounds[0], bounds[1], bounds[2], bounds[3]);
 		}catch(Exception ignored) {}
 
 		return webElement;
 	}
 
 	/**
-	 * 检查WebView内容解析是否完成,默认超时5s;解析完成返回true,未完成返回false
-	 * Waits for {@code WebElement} objects to be created
+	 * 解析WebElement的其他属性,属性用#$分隔,名字和值用::分隔.返回属性名字和值两个数组
+	 * Parses the attributes of a web element, separated by "#$" with "::" between name and value.
 	 * 
-	 * @return true if successfully created before timout
+	 * @param information the data of one or more web elements
+	 * @param start the index of the first character of the attributes
+	 * @param end the index after the last character of the attributes
+	 * @return the names and the values of the attributes, in the same order
 	 */
 
-	private boolean waitForWebElementsToBeCreated(){
-		// 5s延时
-		final long endTime = SystemClock.uptimeMillis() + 5000;
-		// 检查是否超时
-		while(SystemClock.uptimeMillis() < endTime){
-			// 已解析完成，返回true
-			if(isFinished){
-				return true;
+	static String[][] parseAttributes(String information, int start, int end){
+		if(start >= end){
+			return new String[][] {NO_ATTRIBUTES, NO_ATTRIBUTES};
+		}
+		int position = start;
+		int count = 0;
+		String[] attributeNames = new String[8];
+		String[] attributeValues = new String[8];
+		while(position < end){
+			int attributeEnd = indexOf(information, ATTRIBUTE_SEPARATOR, position, end);
+			int valueStart = indexOf(information, VALUE_SEPARATOR, position, attributeEnd);
+			String attributeName = information.substring(position, valueStart);
+			String attributeValue = attributeName;
+			// 对于只有key的属性，key也作为value使用
+			if(valueStart + VALUE_SEPARATOR.length() < attributeEnd){
+				valueStart += VALUE_SEPARATOR.length();
+				attributeValue = information.substring(valueStart, indexOf(information, VALUE_SEPARATOR, valueStart, attributeEnd));
+			}
+			if(count == attributeNames.length){
+				attributeNames = grow(attributeNames);
+				attributeValues = grow(attributeValues);
+			}
+			attributeNames[count] = attributeName;
+			attributeValues[count] = attributeValue;
+			count++;
+			position = attributeEnd + ATTRIBUTE_SEPARATOR.length();
+		}
+		return new String[][] {trim(attributeNames, count), trim(attributeValues, count)};
+	}
+
+	/**
+	 * 在start和end之间查找分隔符,找不到时返回end
+	 * Returns the index of the separator between {@code start} and {@code end}, or {@code end} if there is none.
+	 */
+
+	private static int indexOf(String information, String separator, int start, int end){
+		int index = information.indexOf(separator, start);
+		if(index == -1 || index + separator.length() > end){
+			return end;
+		}
+		return index;
+	}
+
+	/**
+	 * 解析坐标并四舍五入为整数,常见的小数格式直接解析,其他格式使用Float.parseFloat
+	 * Parses a coordinate and rounds it to an int. Plain decimals are parsed directly, 
+	 * anything else, such as exponents, falls back to {@code Float.parseFloat}.
+	 */
+
+	private static int parseCoordinate(String information, int start, int end){
+		int position = start;
+		boolean negative = position < end && information.charAt(position) == '-';
+		if(negative){
+			position++;
+		}
+		long integer = 0;
+		long fraction = 0;
+		long divisor = 1;
+		int digits = 0;
+		boolean inFraction = false;
+
+		for(; position < end; position++){
+			char c = information.charAt(position);
+			if(c >= '0' && c <= '9'){
+				digits++;
+				if(!inFraction){
+					integer = integer * 10 + (c - '0');
+				}
+				// 只保留9位小数,足够四舍五入
+				else if(divisor < 1000000000L){
+					fraction = fraction * 10 + (c - '0');
+					divisor *= 10;
+				}
+			}
+			else if(c == '.' && !inFraction){
+				inFraction = true;
+			}
+			else {
+				return Math.round(Float.parseFloat(information.substring(start, end)));
+			}
+		}
+		if(digits == 0 || digits > 18){
+			return Math.round(Float.parseFloat(information.substring(start, end)));
+		}
+		float value = (float) (integer + (double) fraction / divisor);
+		return Math.round(negative ? -value : value);
+	}
+
+	private static String[] grow(String[] array){
+		String[] grown = new String[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	private static String[] trim(String[] array, int length){
+		if(array.length == length){
+			return array;
+		}
+		String[] trimmed = new String[length];
+		System.arraycopy(array, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+	/**
+	 * 一次WebElement查询,保存查询结果,RobotiumWeb.js发送完所有结果后结束
+	 * A query of web elements. Results are added from the thread the messages of RobotiumWeb.js 
+	 * arrive on, and the query is finished when RobotiumWeb.js has sent all of them.
+	 */
+
+	static class Query {
+		// 查询编号
+		final int id;
+		// 查询结束计数器
+		private final CountDownLatch finished = new CountDownLatch(1);
+		// 查询到的WebElement
+		private final ArrayList<WebElement> webElements = new ArrayList<WebElement>();
+		// 查询开始时间
+		private final long startTime = SystemClock.uptimeMillis();
+		// 查询结束时间,未结束时为0
+		private volatile long finishTime;
+		// 收到的字符数
+		private int characters;
+		// 结果的发送方式
+		private String transport = "none";
+		// 可缓存查询的标识,不使用缓存时为null
+		volatile String snapshotKey;
+		// 发送给页面的缓存结果
+		volatile Snapshot offeredSnapshot;
+		// 发起查询时WebView的缩放比例
+		private float scale = 1;
+		// 发起查询时WebView在屏幕中的坐标
+		private final int[] locationOfWebViewXY = new int[2];
+
+		Query(int id){
+			this.id = id;
+		}
+
+		/**
+		 * 记录WebView的缩放比例和屏幕坐标,在UI线程中发起查询时调用
+		 * Records the scale and the screen location of the {@code WebView}. Called on the UI thread 
+		 * when the query is issued, as the threads results arrive on must not access the {@code WebView}.
+		 * 
+		 * @param scale the scale of the {@code WebView}
+		 * @param locationOfWebViewXY the location of the {@code WebView} on the screen
+		 */
+
+		synchronized void setLocationOfWebView(float scale, int[] locationOfWebViewXY){
+			this.scale = scale;
+			this.locationOfWebViewXY[0] = locationOfWebViewXY[0];
+			this.locationOfWebViewXY[1] = locationOfWebViewXY[1];
+		}
+
+		synchronized float getScale(){
+			return scale;
+		}
+
+		synchronized int[] getLocationOfWebView(){
+			return new int[] {locationOfWebViewXY[0], locationOfWebViewXY[1]};
+		}
+
+		synchronized void addAll(List<WebElement> createdWebElements, int characters, String transport){
+			webElements.addAll(createdWebElements);
+			this.characters += characters;
+			this.transport = transport;
+		}
+
+		synchronized ArrayList<WebElement> getWebElements(){
+			return new ArrayList<WebElement>(webElements);
+		}
+
+		void finish(){
+			finishTime = SystemClock.uptimeMillis();
+			finished.countDown();
+		}
+
+		/**
+		 * 把完整结束的查询加入所用发送方式的累计统计,缓存结果回答的查询不统计
+		 * Adds a finished query to the statistics of the transport that delivered its results. 
+		 * Queries that timed out or were answered from a snapshot are left out.
+		 */
+
+		synchronized void addStatisticsTo(Map<String, TransportStatistics> transportStatistics, int numberOfWebElements){
+			if(finishTime == 0 || (!TRANSPORT_PROMPT.equals(transport) && !TRANSPORT_JAVASCRIPT_INTERFACE.equals(transport))){
+				return;
+			}
+			synchronized(transportStatistics){
+				TransportStatistics statistics = transportStatistics.get(transport);
+				if(statistics == null){
+					statistics = new TransportStatistics();
+					transportStatistics.put(transport, statistics);
+				}
+				statistics.queries++;
+				statistics.elements += numberOfWebElements;
+				statistics.characters += characters;
+				statistics.time += finishTime - startTime;
+			}
+		}
+
+		/**
+		 * 获取查询的统计信息,用于比较不同的发送方式
+		 * Returns the duration, the amount of data and the transport of the query, to compare transports.
+		 */
+
+		synchronized String getStatistics(int numberOfWebElements){
+			String duration = finishTime != 0 ? (finishTime - startTime) + " ms" : "timed out";
+			return "Web query " + id + ": " + numberOfWebElements + " elements, " + characters + " characters over " + transport + ", " + duration;
+		}
+
+		/**
+		 * 等待查询结束
+		 * Waits for the query to finish.
+		 * 
+		 * @param timeout the maximum time to wait in milliseconds
+		 * @return true if the query finished before the timeout
+		 */
+
+		boolean await(long timeout){
+			try {
+				return finished.await(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * 一种发送方式的累计统计
+	 * The queries, web elements, characters and time collected for one transport.
+	 */
+
+	static class TransportStatistics {
+		int queries;
+		int elements;
+		long characters;
+		long time;
+
+		/**
+		 * 获取每毫秒发送的字符数
+		 * Returns the characters sent per millisecond.
+		 */
+
+		double getThroughput(){
+			return (double) characters / Math.max(1, time);
+		}
+
+		@Override
+		public String toString(){
+			return queries + " queries, " + elements + " elements, " + characters + " characters in " + time + " ms, " 
+					+ String.format("%.1f", getThroughput()) + " characters/ms";
+		}
+	}
+
+	/**
+	 * 一次查询的缓存结果,包括查询时的页面状态和WebView的位置与缩放比例.
+	 * 缓存和返回的都是WebElement的副本,调用者修改返回的WebElement不会影响缓存
+	 * The results of a query together with the page state reported by RobotiumWeb.js and the 
+	 * location and scale of the {@code WebView}, which the screen locations of the results depend on. 
+	 * The snapshot keeps its own copies of the web elements and hands out new copies, so callers 
+	 * changing the web elements they received do not change the results of later queries.
+	 */
+
+	static class Snapshot {
+		// 查询标识
+		final String key;
+		// 页面状态
+		final String state;
+		// WebView的缩放比例
+		private final float scale;
+		// WebView在屏幕中的坐标
+		private final int[] locationOfWebViewXY = new int[2];
+		// 查询到的WebElement的副本
+		private final ArrayList<WebElement> webElements;
+
+		Snapshot(String key, String state, Query query, ArrayList<WebElement> webElements){
+			this.key = key;
+			this.state = state;
+			this.webElements = copy(webElements);
+			scale = query.getScale();
+			int[] xy = query.getLocationOfWebView();
+			locationOfWebViewXY[0] = xy[0];
+			locationOfWebViewXY[1] = xy[1];
+		}
+
+		/**
+		 * 发起查询时WebView的位置和缩放比例是否与缓存时相同
+		 * Returns true if the {@code WebView} had the location and scale it had when the snapshot was taken 
+		 * when the given query was issued.
+		 */
+
+		boolean isAt(Query query){
+			int[] xy = query.getLocationOfWebView();
+			return query.getScale() == scale && xy[0] == locationOfWebViewXY[0] && xy[1] == locationOfWebViewXY[1];
+		}
+
+		/**
+		 * 获取缓存的WebElement的副本
+		 * Returns new copies of the web elements of the snapshot.
+		 */
+
+		ArrayList<WebElement> copyWebElements(){
+			return copy(webElements);
+		}
+
+		private static ArrayList<WebElement> copy(List<WebElement> webElements){
+			ArrayList<WebElement> copies = new ArrayList<WebElement>(webElements.size());
+			for(WebElement webElement : webElements){
+				copies.add(webElement.copy());
 			}
-			// 等待300ms
-			sleeper.sleepMini();
+			return copies;
 		}
-		return false;
 	}
 
 }
@@ -1,10 +1,13 @@
 package com.robotium.solo;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import com.robotium.solo.Solo.Config;
 import android.app.Activity;
@@ -37,6 +40,15 @@ class WebUtils {
 	WebChromeClient originalWebChromeClient = null;
 	// 配置文件
 	private Config config;
+	// RobotiumWeb.js的内容,只读取一次
+	private String javaScript;
+	// 按照webFrame修改后的RobotiumWeb.js
+	private final Map<String, String> javaScriptsByWebFrame = new HashMap<String, String>();
+	// 页面中已注入脚本时只发送函数调用,否则通过prompt获取脚本并注入
+	private static final String INJECT_IF_MISSING = "if(window.robotiumWebFrame !== \"%s\"){eval(prompt('robotium-script'));}";
+	// 使用JavaScript bridge时通过bridge获取脚本,页面加载时bridge还未安装则通过prompt获取
+	private static final String INJECT_IF_MISSING_WITH_BRIDGE = "if(window.robotiumWebFrame !== \"%s\"){eval(window." + RobotiumJavaScriptBridge.NAME + " && window." 
+			+ RobotiumJavaScriptBridge.NAME + ".getScript ? String(window." + RobotiumJavaScriptBridge.NAME + ".getScript()) : prompt('robotium-script'));}";
 
 
 	/**
@@ -49,12 +61,12 @@ class WebUtils {
 	 * @param viewFetcher the {@code ViewFetcher} instance
 	 */
 
-	public WebUtils(Config config, Instrumentation instrumentation, ActivityUtils activityUtils, ViewFetcher viewFetcher, Sleeper sleeper){
+	public WebUtils(Config config, Instrumentation instrumentation, ActivityUtils activityUtils, ViewFetcher viewFetcher){
 		this.config = config;
 		this.inst = instrumentation;
 		this.activityUtils = activityUtils;
 		this.viewFetcher = viewFetcher;
-		webElementCreator = new WebElementCreator(sleeper);
+		webElementCreator = new WebElementCreator(config);
 		robotiumWebCLient = new RobotiumWebClient(instrumentation, webElementCreator);
 	}
 
@@ -67,8 +79,8 @@ class WebUtils {
 	 */
 
 	public ArrayList<TextView> getTextViewsFromWebView(){
-		// true标识执行完成，false标识未执行成功
-		boolean javaScriptWasExecuted = executeJavaScriptFunction("allTexts();");	
+		// true标识执行完成，false标识未执行成功,只返回可见的文本
+		boolean javaScriptWasExecuted = executeJavaScriptFunction("allTexts();", true, true, 0);	
 		// WebElement转换成TextView
 		return createAndReturnTextViewsFromWebElements(javaScriptWasExecuted);	
 	}
@@ -84,15 +96,12 @@ class WebUtils {
 		ArrayList<TextView> webElementsAsTextViews = new ArrayList<TextView>();
 		// js脚本执行成功，则遍历所有获取到的WebElement信息，并转换成TextView对象
 		if(javaScriptWasExecuted){
-			// 编译所有的WebElement
+			// 编译所有的WebElement,页面中已过滤掉不可见的
 			for(WebElement webElement : webElementCreator.getWebElementsFromWebViews()){
-				// 可见控件转换成TextView对象
-				if(isWebElementSufficientlyShown(webElement)){
-					// 转换成TextView对象
-					RobotiumTextView textView = new RobotiumTextView(inst.getContext(), webElement.getText(), webElement.getLocationX(), webElement.getLocationY());
-					//添加到返回列表
-					webElementsAsTextViews.add(textView);
-				}
+				// 转换成TextView对象
+				RobotiumTextView textView = new RobotiumTextView(inst.getContext(), webElement.getText(), webElement.getLocationX(), webElement.getLocationY());
+				//添加到返回列表
+				webElementsAsTextViews.add(textView);
 			}	
 		}
 		return webElementsAsTextViews;		
@@ -108,9 +117,8 @@ class WebUtils {
 
 	public ArrayList<WebElement> getWebElements(boolean onlySufficientlyVisible){
 		// 执行获取所所有 WebElement的JavaScript脚本
-		boolean javaScriptWasExecuted = executeJavaScriptFunction("allWebElements();");
-		// 过滤掉非可见WebElement,返回所有剩余的
-		return getWebElements(javaScriptWasExecuted, onlySufficientlyVisible);
+		boolean javaScriptWasExecuted = executeJavaScriptFunction("allWebElements();", onlySufficientlyVisible, true, 0);
+		return getWebElements(javaScriptWasExecuted);
 	}
 
 	/**
@@ -123,53 +131,82 @@ class WebUtils {
 	 */
 
 	public ArrayList<WebElement> getWebElements(final By by, boolean onlySufficientlyVisbile){
-		// 获取By属性对应的所有WebElement
-		boolean javaScriptWasExecuted = executeJavaScript(by, false);
-		// 该判断目前还没使用,2条路径相同业务逻辑
-		if(config.useJavaScriptToClickWebElements){
-			if(!javaScriptWasExecuted){
-				return new ArrayList<WebElement>();
-			}
-			return webElementCreator.getWebElementsFromWebViews();
-		}
-		// 过滤掉非可见WebElement,返回所有剩余的
-		return getWebElements(javaScriptWasExecuted, onlySufficientlyVisbile);
+		return getWebElements(by, onlySufficientlyVisbile, 0);
 	}
 
 	/**
-	 * Returns the sufficiently shown WebElements
+	 * 获取By参数指定属性的WebElement,页面中找到maxResults个后不再继续查找
+	 * Returns an ArrayList of WebElements of the specified By object currently shown in the active WebView. 
+	 * The page stops searching once {@code maxResults} web elements are found.
 	 * 
-	 * @param javaScriptWasExecuted true if JavaScript was executed
+	 * @param by the By object. Examples are By.id("id") and By.name("name")
 	 * @param onlySufficientlyVisible true if only sufficiently visible {@link WebElement} objects should be returned
-	 * @return the sufficiently shown WebElements
+	 * @param maxResults the maximum number of web elements to return, {@code 0} means no limit
+	 * @return an {@code ArrayList} of the first {@code maxResults} {@link WebElement} objects currently shown in the active WebView 
 	 */
 
-	private ArrayList<WebElement> getWebElements(boolean javaScriptWasExecuted, boolean onlySufficientlyVisbile){
-		ArrayList<WebElement> webElements = new ArrayList<WebElement>();
+	public ArrayList<WebElement> getWebElements(final By by, boolean onlySufficientlyVisbile, int maxResults){
+		// 获取By属性对应的所有WebElement
+		// 使用JavaScript点击时不过滤不可见的WebElement
+		boolean javaScriptWasExecuted = executeJavaScript(by, false, onlySufficientlyVisbile && !config.useJavaScriptToClickWebElements, maxResults);
+		return getWebElements(javaScriptWasExecuted);
+	}
 
-		if(javaScriptWasExecuted){
-			for(WebElement webElement : webElementCreator.getWebElementsFromWebViews()){
-				if(!onlySufficientlyVisbile){
-					webElements.add(webElement);
-				}
-				else if(isWebElementSufficientlyShown(webElement)){
-					webElements.add(webElement);
+	/**
+	 * 分别通过prompt和JavaScript bridge多次获取当前WebView中的所有WebElement,比较两种发送方式的吞吐量.
+	 * 查询不使用缓存结果,结束后恢复配置的发送方式
+	 * Queries all web elements of the freshest {@code WebView} the given number of times over each transport 
+	 * and compares their throughput. Snapshots are not used, and the configured transport is restored afterwards.
+	 * 
+	 * @param repetitions the number of queries per transport
+	 * @return the comparison of the transports
+	 */
+
+	public String compareTransports(int repetitions){
+		Config.WebTransport configuredTransport = config.webTransport;
+		webElementCreator.resetTransportStatistics();
+		try{
+			for(Config.WebTransport transport : Config.WebTransport.values()){
+				config.webTransport = transport;
+				for(int i = 0; i < repetitions; i++){
+					getWebElements(executeJavaScriptFunction("allWebElements();", false, false, 0));
 				}
 			}
+		}finally{
+			config.webTransport = configuredTransport;
 		}
-		return webElements;
+		return webElementCreator.getTransportComparison();
 	}
 
 	/**
-	 * 构造JavaScript执行环境,并返回构造好的JavaScript
-	 * Prepares for start of JavaScript execution
+	 * 获取页面返回的WebElement,不可见的WebElement已在页面中过滤
+	 * Returns the WebElements sent by the page. WebElements that are not sufficiently shown are 
+	 * already filtered out by RobotiumWeb.js when requested.
 	 * 
-	 * @return the JavaScript as a String
+	 * @param javaScriptWasExecuted true if JavaScript was executed
+	 * @return the WebElements
 	 */
 
-	private String prepareForStartOfJavascriptExecution(){
-		// 初始化WebElement存储容器
-		webElementCreator.prepareForStart();
+	private ArrayList<WebElement> getWebElements(boolean javaScriptWasExecuted){
+		if(!javaScriptWasExecuted){
+			return new ArrayList<WebElement>();
+		}
+		return webElementCreator.getWebElementsFromWebViews();
+	}
+
+	/**
+	 * 构造JavaScript执行环境,并把当前webFrame对应的脚本交给RobotiumWebClient,页面需要注入时使用
+	 * Prepares for start of JavaScript execution. The JavaScript for the current web frame is handed 
+	 * to the {@code RobotiumWebClient}, which injects it into pages that do not have it yet.
+	 * 
+	 * @param webFrame the web frame
+	 * @param numberOfWebViews the number of {@code WebView} objects the JavaScript is executed in
+	 * @return the queries the results of the JavaScript execution are collected in, one per {@code WebView}
+	 */
+
+	private List<WebElementCreator.Query> prepareForStartOfJavascriptExecution(String webFrame, int numberOfWebViews){
+		// 开始新的查询,初始化WebElement存储容器
+		List<WebElementCreator.Query> queries = webElementCreator.prepareForStart(numberOfWebViews);
 		// 获取当前版本Android对应的WebChromeClient
 		WebChromeClient currentWebChromeClient = getCurrentWebChromeClient();
 		// 保存原有的WebChromeClient
@@ -177,9 +214,10 @@ class WebUtils {
 			originalWebChromeClient = getCurrentWebChromeClient();	
 		}
 		// 初始化 Robotium定制版本的WebChromeClient
-		robotiumWebCLient.enableJavascriptAndSetRobotiumWebClient(viewFetcher.getCurrentViews(WebView.class, true), originalWebChromeClient);
-		// 返回读取到的RobotiumWeb.js中的内容
-		return getJavaScriptAsString();
+		robotiumWebCLient.enableJavascriptAndSetRobotiumWebClient(viewFetcher.getCurrentViews(WebView.class, true), originalWebChromeClient, useJavaScriptInterface());
+		// 设置需要注入的RobotiumWeb.js内容
+		robotiumWebCLient.setJavaScript(getJavaScript(webFrame));
+		return queries;
 	}
 	
 	/**
@@ -268,33 +306,49 @@ class WebUtils {
 	 */
 
 	public boolean executeJavaScript(final By by, boolean shouldClick){
+		return executeJavaScript(by, shouldClick, false, 0);
+	}
+
+	/**
+	 * 按照By类型执行对应的JavaScript,onlySufficientlyVisible为true时页面只返回可见的WebElement,
+	 * 页面找到maxResults个WebElement后停止查找
+	 * Executes JavaScript determined by the given By object
+	 * 
+	 * @param by the By object e.g. By.id("hello")
+	 * @param shouldClick true if click should be performed
+	 * @param onlySufficientlyVisible true if only sufficiently visible web elements should be sent back
+	 * @param maxResults the number of web elements after which the page stops searching, {@code 0} means no limit
+	 * @return true if JavaScript function was executed
+	 */
+
+	private boolean executeJavaScript(final By by, boolean shouldClick, boolean onlySufficientlyVisible, int maxResults){
 		// 拼接按照Id执行的JavaScript脚本
 		if(by instanceof By.Id){
-			return executeJavaScriptFunction("id(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");");
+			return executeJavaScriptFunction("id(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");", onlySufficientlyVisible, !shouldClick, maxResults);
 		}
 		// 拼接按照Xpath执行的JavaScript脚本
 		else if(by instanceof By.Xpath){
-			return executeJavaScriptFunction("xpath(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");");
+			return executeJavaScriptFunction("xpath(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");", onlySufficientlyVisible, !shouldClick, maxResults);
 		}
 		// 拼接按照CssSelector执行的JavaScript脚本
 		else if(by instanceof By.CssSelector){
-			return executeJavaScriptFunction("cssSelector(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");");
+			return executeJavaScriptFunction("cssSelector(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");", onlySufficientlyVisible, !shouldClick, maxResults);
 		}
 		// 拼接按照Name执行的JavaScript脚本
 		else if(by instanceof By.Name){
-			return executeJavaScriptFunction("name(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");");
+			return executeJavaScriptFunction("name(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");", onlySufficientlyVisible, !shouldClick, maxResults);
 		}
 		// 拼接按照ClassName执行的JavaScript脚本
 		else if(by instanceof By.ClassName){
-			return executeJavaScriptFunction("className(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");");
+			return executeJavaScriptFunction("className(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");", onlySufficientlyVisible, !shouldClick, maxResults);
 		}
 		// 拼接按照Text执行的JavaScript脚本
 		else if(by instanceof By.Text){
-			return executeJavaScriptFunction("textContent(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");");
+			return executeJavaScriptFunction("textContent(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");", onlySufficientlyVisible, !shouldClick, maxResults);
 		}
 		// 拼接按照TagName执行的JavaScript脚本
 		else if(by instanceof By.TagName){
-			return executeJavaScriptFunction("tagName(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");");
+			return executeJavaScriptFunction("tagName(\""+by.getValue()+"\", \"" + String.valueOf(shouldClick) + "\");", onlySufficientlyVisible, !shouldClick, maxResults);
 		}
 		return false;
 	}
@@ -308,70 +362,160 @@ class WebUtils {
 	 */
 
 	private boolean executeJavaScriptFunction(final String function){
-		// 获取当前时刻最新的WebView
-		final WebView webView = viewFetcher.getFreshestView(viewFetcher.getCurrentViews(WebView.class, true));
+		return executeJavaScriptFunction(function, false, false, 0);
+	}
+
+	/**
+	 * 在WebView中执行指定的Javascript,onlySufficientlyVisible为true时页面只返回可见的WebElement.
+	 * readOnly为true时页面没有变化则使用上次相同查询的结果,配置了webQueriesInAllWebViews时在所有可见的WebView中执行.页面找到maxResults个WebElement后停止查找.执行成功返回true,否则返回false
+	 * Executes the given JavaScript function. If only sufficiently visible web elements are requested, 
+	 * the page gets the visible height of the {@code WebView} and filters the elements before sending them.
+	 * Functions that only query the page can use snapshots: if the page has not changed since the same 
+	 * query was last executed, the page does not run the function and the previous results are returned. 
+	 * They are also executed in all shown {@code WebView} objects if {@link Config#webQueriesInAllWebViews} 
+	 * is set, with one query per {@code WebView}.
+	 * 
+	 * @param function the function as a String
+	 * @param onlySufficientlyVisible true if only sufficiently visible web elements should be sent back
+	 * @param readOnly true if the function does not change the page, its results may then be answered from a snapshot and 
+	 * it may be executed in all shown {@code WebView} objects
+	 * @param maxResults the number of web elements after which the page stops searching, {@code 0} means no limit
+	 * @return true if JavaScript function was executed
+	 */
+
+	private boolean executeJavaScriptFunction(final String function, final boolean onlySufficientlyVisible, boolean readOnly, final int maxResults){
+		// 获取需要执行的WebView,最新的WebView在最前
+		final List<WebView> webViews = getWebViewsToQuery(readOnly);
 		// 非null检查
-		if(webView == null){
+		if(webViews.isEmpty()){
 			return false;
 		}
-		// 获取JavaScript资源文件，即RoboTiumWeb.js中的内容
-		final String javaScript = setWebFrame(prepareForStartOfJavascriptExecution());
-		// WebView中加载相关JavaScript
-		Activity activity = activityUtils.getCurrentActivity(false);
-		if(activity != null){
-		activity.runOnUiThread(new Runnable() {
+		final String webFrame = getWebFrame();
+		final List<WebElementCreator.Query> queries = prepareForStartOfJavascriptExecution(webFrame, webViews.size());
+		final boolean useSnapshots = readOnly && "document".equals(webFrame);
+
+		// 所有WebView在一次主线程调用中加载相关JavaScript,各WebView中的查询同时进行.
+		// WebView只能在UI线程中访问,缩放比例和屏幕坐标在这里记录,之后解析结果时使用
+		Runnable loadCalls = new Runnable() {
 			public void run() {
-				if(webView != null){
-					webView.loadUrl("javascript:" + javaScript + function);
+				int[] locationOfWebViewXY = new int[2];
+				for(int i = 0; i < webViews.size(); i++){
+					WebView webView = webViews.get(i);
+					WebElementCreator.Query query = queries.get(i);
+					float scale = webView.getScale();
+					webView.getLocationOnScreen(locationOfWebViewXY);
+					query.setLocationOfWebView(scale, locationOfWebViewXY);
+					// 脚本每个页面只注入一次,之后只发送查询编号和函数调用
+					// WebView可见区域的高度按缩放比例换算成页面中的坐标,小于0时页面不过滤
+					float visibleHeight = onlySufficientlyVisible ? webView.getHeight() / scale : -1;
+					String call = String.format(useJavaScriptInterface() ? INJECT_IF_MISSING_WITH_BRIDGE : INJECT_IF_MISSING, webFrame) 
+							+ "robotiumStartQuery(" + query.id + "," + visibleHeight + "," + maxResults + "," + useJavaScriptInterface() + ");";
+					// 页面与缓存结果的状态相同时不再执行查询,frame中的页面变化无法监听,不使用缓存
+					if(useSnapshots){
+						String state = webElementCreator.getSnapshotState(query, webView, function + visibleHeight + "," + maxResults);
+						call += "if(!robotiumUnchangedSince(\"" + state + "\")){" + function + "}";
+					}
+					else{
+						call += function;
+					}
+					webView.loadUrl("javascript:" + call);
 				}
 			}
-		});
+		};
+		Activity activity = activityUtils.getCurrentActivity(false);
+		if(activity != null){
+			activity.runOnUiThread(loadCalls);
 		}
 		else{
-			inst.runOnMainSync(new Runnable() {
-			public void run() {
-				if(webView != null){
-					webView.loadUrl("javascript:" + javaScript + function);
+			inst.runOnMainSync(loadCalls);
+		}
+		return true;
+	}
+
+	/**
+	 * 是否通过JavaScript bridge接收查询结果
+	 * Returns true if results should be sent through the {@link RobotiumJavaScriptBridge} instead of prompt.
+	 */
+
+	private boolean useJavaScriptInterface(){
+		return config.webTransport == Config.WebTransport.JAVASCRIPT_INTERFACE;
+	}
+
+	/**
+	 * 获取需要执行JavaScript的WebView.只读取页面且配置了webQueriesInAllWebViews时返回所有可见的WebView,
+	 * 否则只返回最新的WebView
+	 * Returns the {@code WebView} objects to execute JavaScript in. Functions that only read the page are 
+	 * executed in all shown {@code WebView} objects if {@link Config#webQueriesInAllWebViews} is set, 
+	 * with the freshest {@code WebView} first. Otherwise only the freshest {@code WebView} is returned.
+	 * 
+	 * @param readOnly true if the function does not change the page
+	 * @return the {@code WebView} objects, empty if there is none
+	 */
+
+	private List<WebView> getWebViewsToQuery(boolean readOnly){
+		ArrayList<WebView> currentWebViews = viewFetcher.getCurrentViews(WebView.class, true);
+		List<WebView> webViews = new ArrayList<WebView>();
+		// 获取当前时刻最新的WebView
+		WebView freshestWebView = viewFetcher.getFreshestView(currentWebViews);
+		if(freshestWebView == null){
+			return webViews;
+		}
+		webViews.add(freshestWebView);
+
+		if(readOnly && config.webQueriesInAllWebViews){
+			for(WebView webView : RobotiumUtils.removeInvisibleViews(currentWebViews)){
+				if(webView != freshestWebView && webView.getHeight() > 0){
+					webViews.add(webView);
 				}
 			}
-		});
 		}
-		return true;
+		return webViews;
 	}
-	
-	private String setWebFrame(String javascript){
+
+	/**
+	 * 获取当前配置的webFrame,未设置时为document
+	 * Returns the configured web frame, "document" if none is set.
+	 */
+
+	private String getWebFrame(){
 		String frame = config.webFrame;
-		
-		if(frame.isEmpty() || frame.equals("document")){
-			return javascript;
+
+		if(frame == null || frame.length() == 0){
+			return "document";
 		}
-		javascript = javascript.replaceAll(Pattern.quote("document, "), "document.getElementById(\""+frame+"\").contentDocument, ");
-		javascript = javascript.replaceAll(Pattern.quote("document.body, "), "document.getElementById(\""+frame+"\").contentDocument, ");
-		return javascript;
+		return frame;
 	}
 
 	/**
-	 * 检查当前WebElement是否可见
-	 * Returns true if the view is sufficiently shown
-	 *
-	 * @param view the view to check
-	 * @return true if the view is sufficiently shown
+	 * 获取指定webFrame对应的RobotiumWeb.js,结果会被缓存.
+	 * 脚本最后设置robotiumWebFrame变量,用于判断页面中是否已注入脚本
+	 * Returns RobotiumWeb.js rewritten for the given web frame. The result is cached. The script ends 
+	 * by setting {@code robotiumWebFrame}, which tells whether a page already has the script.
+	 * 
+	 * @param frame the web frame
+	 * @return the JavaScript for the web frame
 	 */
 
-	public final boolean isWebElementSufficientlyShown(WebElement webElement){
-		// 获取当前最新的 WebView
-		final WebView webView = viewFetcher.getFreshestView(viewFetcher.getCurrentViews(WebView.class, true));
-		// 存储WebView XY坐标信息
-		final int[] xyWebView = new int[2];
-
-		if(webView != null && webElement != null){
-			// 获取WebView XY坐标信息
-			webView.getLocationOnScreen(xyWebView);
-			//  WebElement在WebView外，则不可见
-			if(xyWebView[1] + webView.getHeight() > webElement.getLocationY())
-				return true;
+	private synchronized String getJavaScript(String frame){
+		String javaScriptForFrame = javaScriptsByWebFrame.get(frame);
+
+		if(javaScriptForFrame == null){
+			if(javaScript == null){
+				javaScript = getJavaScriptAsString();
+			}
+			javaScriptForFrame = setWebFrame(javaScript, frame) + "var robotiumWebFrame = \"" + frame + "\";\n";
+			javaScriptsByWebFrame.put(frame, javaScriptForFrame);
 		}
-		return false;
+		return javaScriptForFrame;
+	}
+	
+	private String setWebFrame(String javascript, String frame){
+		if(frame.equals("document")){
+			return javascript;
+		}
+		javascript = javascript.replaceAll(Pattern.quote("document, "), "document.getElementById(\""+frame+"\").contentDocument, ");
+		javascript = javascript.replaceAll(Pattern.quote("document.body, "), "document.getElementById(\""+frame+"\").contentDocument, ");
+		return javascript;
 	}
 	
 	/**
@@ -409,19 +553,21 @@ class WebUtils {
 
 	private String getJavaScriptAsString() {
 		InputStream fis = getClass().getResourceAsStream("RobotiumWeb.js");
-		StringBuffer javaScript = new StringBuffer();
+		StringBuilder javaScript = new StringBuilder(16 * 1024);
 
 		try {
-			BufferedReader input =  new BufferedReader(new InputStreamReader(fis));
-			String line = null;
-			while (( line = input.readLine()) != null){
-				javaScript.append(line);
-				javaScript.append("\n");
+			Reader input = new InputStreamReader(fis, "UTF-8");
+			char[] buffer = new char[4096];
+			int count;
+			while ((count = input.read(buffer)) != -1){
+				javaScript.append(buffer, 0, count);
 			}
 			input.close();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
+		// 确保最后一行以换行结束
+		javaScript.append("\n");
 		return javaScript.toString();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,18 @@
+package android.webkit;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 编译时使用的@JavascriptInterface声明,与API 17中的注解相同,运行时使用系统中的注解
+ * Compile-time copy of the API 17 {@code android.webkit.JavascriptInterface} annotation. Only
+ * used in provided scope, on API 17 and later the platform class is loaded at runtime and older
+ * platforms ignore the annotation.
+ */
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface JavascriptInterface {
+}